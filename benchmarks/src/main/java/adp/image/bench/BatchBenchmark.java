@@ -0,0 +1,75 @@
+package adp.image.bench;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import adp.image.report4.BatchSearcher;
+import adp.image.report4.PackedImage;
+import adp.image.report4.RasterMatcher;
+import adp.image.report4.RasterSearcher;
+
+/**
+ * Searches for the bundled templates, repeated {@code copies} times, in bigImage1r.jpg: once
+ * with a RasterSearcher per template and once with a single BatchSearcher.
+ */
+@State( Scope.Benchmark)
+@BenchmarkMode( Mode.Throughput)
+@OutputTimeUnit( TimeUnit.SECONDS)
+@Warmup( iterations = 2, time = 5)
+@Measurement( iterations = 3, time = 10)
+@Fork( 1)
+public class BatchBenchmark {
+
+    private static final String[] TEMPLATES = { "tiny3r.jpg", "small1r.jpg", "small2r.jpg"};
+
+    @Param( { "1", "8"})
+    public int copies;
+
+    private PackedImage main;
+    private final List<PackedImage> templates = new ArrayList<PackedImage>();
+    private BlackholeListener listener;
+
+    @Setup
+    public void load( final Blackhole blackhole) throws IOException {
+        for( String template : TEMPLATES) {
+            final BufferedImage[] images = Fixtures.load( template);
+            this.main = PackedImage.of( images[0]);
+            for( int i = 0; i < this.copies; i++) {
+                this.templates.add( PackedImage.of( images[1]));
+            }
+        }
+        this.listener = new BlackholeListener( blackhole);
+    }
+
+    @Benchmark
+    public void separateSearchers( final Positions positions) {
+        for( PackedImage template : this.templates) {
+            final RasterSearcher searcher = new RasterSearcher( new RasterMatcher( this.main, template));
+            searcher.runSearch( this.listener);
+            positions.positions += searcher.numberOfPositionsTriedSoFar();
+        }
+    }
+
+    @Benchmark
+    public void batchSearcher( final Positions positions) {
+        final BatchSearcher searcher = new BatchSearcher( this.main, this.templates);
+        searcher.runSearch( this.listener);
+        positions.positions += (long) searcher.numberOfPositionsTriedSoFar() * searcher.numberOfTemplates();
+    }
+}
@@ -0,0 +1,27 @@
+package adp.image.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of benchmarks.jar. Accepts the usual JMH command line and always adds the GC
+ * profiler, so allocation rates are reported next to the throughput. On Java 16 and later the
+ * forked JVMs also get the vector module, so the SIMD DistanceKernel can be measured.
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main( final String[] args) throws Exception {
+        final OptionsBuilder options = new OptionsBuilder();
+        options.parent( new CommandLineOptions( args))
+                .addProfiler( GCProfiler.class);
+        if ( Runtime.version().feature() >= 16) {
+            options.jvmArgsAppend( "--add-modules", "jdk.incubator.vector");
+        }
+        new Runner( options.build()).run();
+    }
+}
@@ -0,0 +1,35 @@
+package adp.image.bench;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+import adp.image.jar.Searcher.SearchListener;
+
+/**
+ * SearchListener that hands everything to a Blackhole, so listener calls cost the same
+ * for every searcher and cannot be optimised away.
+ */
+final class BlackholeListener implements SearchListener {
+
+    private final Blackhole blackhole;
+
+    BlackholeListener( final Blackhole blackhole) {
+        this.blackhole = blackhole;
+    }
+
+    @Override
+    public void information( final String message) {
+        this.blackhole.consume( message);
+    }
+
+    @Override
+    public void possibleMatch( final int position, final long elapsedTime, final long positionsTriedSoFar) {
+        this.blackhole.consume( position);
+        this.blackhole.consume( positionsTriedSoFar);
+    }
+
+    @Override
+    public void update( final int position, final long elapsedTime, final long positionsTriedSoFar) {
+        this.blackhole.consume( position);
+        this.blackhole.consume( positionsTriedSoFar);
+    }
+}
@@ -0,0 +1,50 @@
+package adp.image.bench;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+
+import adp.image.Demo;
+
+/**
+ * Loads the image pairs the benchmarks search with. A fixture is either the name of one of the
+ * bundled templates, which is searched for in bigImage1r.jpg, or "synthetic" for the pair
+ * built by {@link Demo#testImages()}.
+ * <p>
+ * The bundled images are looked up in the directory given by the {@code adp.fixtures} system
+ * property, then in the working directory and its parent.
+ */
+final class Fixtures {
+
+    static final String SYNTHETIC = "synthetic";
+    static final String MAIN_IMAGE = "bigImage1r.jpg";
+
+    private Fixtures() {
+    }
+
+    /** Returns the main image and the image to search for in it. */
+    static BufferedImage[] load( final String fixture) throws IOException {
+        if ( SYNTHETIC.equals( fixture)) {
+            return Demo.testImages();
+        }
+        final File directory = directory();
+        return new BufferedImage[] {
+                ImageIO.read( new File( directory, MAIN_IMAGE)),
+                ImageIO.read( new File( directory, fixture))
+        };
+    }
+
+    private static File directory() throws IOException {
+        final String configured = System.getProperty( "adp.fixtures");
+        if ( configured != null) {
+            return new File( configured);
+        }
+        for( String candidate : new String[] { ".", ".."}) {
+            if ( new File( candidate, MAIN_IMAGE).isFile()) {
+                return new File( candidate);
+            }
+        }
+        throw new IOException( "Cannot find " + MAIN_IMAGE + ", set -Dadp.fixtures to the directory holding it");
+    }
+}
@@ -0,0 +1,67 @@
+package adp.image.bench;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import adp.image.report4.DistanceKernel;
+import adp.image.report4.DistanceKernels;
+import adp.image.report4.PackedImage;
+import adp.image.report4.RasterMatcher;
+import adp.image.report4.RasterSearcher;
+
+/**
+ * Compares the scalar and SIMD distance kernels, and the grayscale mode, in a full
+ * RasterSearcher run over already unpacked images. The vector case is skipped when the
+ * kernel is not available.
+ */
+@State( Scope.Benchmark)
+@BenchmarkMode( Mode.Throughput)
+@OutputTimeUnit( TimeUnit.SECONDS)
+@Warmup( iterations = 2, time = 5)
+@Measurement( iterations = 3, time = 10)
+@Fork( 1)
+public class KernelBenchmark {
+
+    @Param( { "tiny3r.jpg", "small1r.jpg", "small2r.jpg"})
+    public String fixture;
+
+    @Param( { "scalar", "vector", "grayscale"})
+    public String kernel;
+
+    private RasterMatcher matcher;
+    private BlackholeListener listener;
+
+    @Setup
+    public void load( final Blackhole blackhole) throws IOException {
+        final DistanceKernel kernel = "vector".equals( this.kernel) ? DistanceKernels.vector() : DistanceKernels.scalar();
+        if ( kernel == null) {
+            throw new IllegalStateException( "The vector kernel needs Java 16+ and --add-modules jdk.incubator.vector");
+        }
+        final BufferedImage[] images = Fixtures.load( this.fixture);
+        this.matcher = new RasterMatcher( PackedImage.of( images[0]), PackedImage.of( images[1]));
+        this.matcher.setKernel( kernel);
+        this.matcher.setGrayscale( "grayscale".equals( this.kernel));
+        this.listener = new BlackholeListener( blackhole);
+    }
+
+    @Benchmark
+    public int rasterSearcher() {
+        final RasterSearcher searcher = new RasterSearcher( this.matcher);
+        searcher.runSearch( this.listener);
+        return searcher.numberOfPositionsTriedSoFar();
+    }
+}
@@ -0,0 +1,23 @@
+package adp.image.bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Secondary result counting the positions tried, which JMH reports as positions per second
+ * next to the searches per second of the primary result.
+ */
+@State( Scope.Thread)
+@AuxCounters( AuxCounters.Type.OPERATIONS)
+public class Positions {
+
+    public long positions;
+
+    @Setup( Level.Iteration)
+    public void clear() {
+        this.positions = 0;
+    }
+}
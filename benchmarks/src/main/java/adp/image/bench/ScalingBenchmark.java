@@ -0,0 +1,70 @@
+package adp.image.bench;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import adp.image.report3.AdvancedSearcher;
+
+/**
+ * Measures how the fork-join searcher scales with the number of pool threads and the
+ * number of rows each leaf task covers.
+ */
+@State( Scope.Benchmark)
+@BenchmarkMode( Mode.Throughput)
+@OutputTimeUnit( TimeUnit.SECONDS)
+@Warmup( iterations = 2, time = 5)
+@Measurement( iterations = 3, time = 10)
+@Fork( 1)
+public class ScalingBenchmark {
+
+    @Param( { "small1r.jpg"})
+    public String fixture;
+
+    @Param( { "1", "2", "4", "8"})
+    public int threads;
+
+    @Param( { "1", "8", "64"})
+    public int rowsPerTask;
+
+    private BufferedImage image1;
+    private BufferedImage image2;
+    private BlackholeListener listener;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void load( final Blackhole blackhole) throws IOException {
+        final BufferedImage[] images = Fixtures.load( this.fixture);
+        this.image1 = images[0];
+        this.image2 = images[1];
+        this.listener = new BlackholeListener( blackhole);
+        this.pool = new ForkJoinPool( this.threads);
+    }
+
+    @TearDown
+    public void shutdown() {
+        this.pool.shutdown();
+    }
+
+    @Benchmark
+    public void advancedSearcher( final Positions positions) {
+        final AdvancedSearcher searcher = new AdvancedSearcher( this.image1, this.image2,
+                0, this.image1.getWidth() * this.image1.getHeight(), this.rowsPerTask, this.listener);
+        positions.positions += this.pool.invoke( searcher);
+    }
+}
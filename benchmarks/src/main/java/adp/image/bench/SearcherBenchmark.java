@@ -0,0 +1,97 @@
+package adp.image.bench;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import adp.image.jar.BasicSearcher;
+import adp.image.jar.Searcher;
+import adp.image.report2.NewBasicSearcher;
+import adp.image.report3.AdvancedSearcher;
+import adp.image.report4.CorrelationSearcher;
+import adp.image.report4.IntegralImageFilter;
+import adp.image.report4.PackedImage;
+import adp.image.report4.RasterMatcher;
+import adp.image.report4.RasterSearcher;
+
+/**
+ * Runs one complete search per operation with each generation of Searcher on the same images.
+ * Every searcher runs in the benchmark thread, apart from AdvancedSearcher which uses the
+ * common fork-join pool as it does through {@link Searcher#runSearch(Searcher.SearchListener)}.
+ */
+@State( Scope.Benchmark)
+@BenchmarkMode( Mode.Throughput)
+@OutputTimeUnit( TimeUnit.SECONDS)
+@Warmup( iterations = 2, time = 5)
+@Measurement( iterations = 3, time = 10)
+@Fork( 1)
+public class SearcherBenchmark {
+
+    @Param( { "tiny3r.jpg", "small1r.jpg", "small2r.jpg", Fixtures.SYNTHETIC})
+    public String fixture;
+
+    private BufferedImage image1;
+    private BufferedImage image2;
+    private BlackholeListener listener;
+
+    @Setup
+    public void load( final Blackhole blackhole) throws IOException {
+        final BufferedImage[] images = Fixtures.load( this.fixture);
+        this.image1 = images[0];
+        this.image2 = images[1];
+        this.listener = new BlackholeListener( blackhole);
+    }
+
+    @Benchmark
+    public void basicSearcher( final Positions positions) {
+        search( new BasicSearcher( this.image1, this.image2), positions);
+    }
+
+    @Benchmark
+    public void newBasicSearcher( final Positions positions) {
+        search( new NewBasicSearcher( this.image1, this.image2, this.listener), positions);
+    }
+
+    @Benchmark
+    public void advancedSearcher( final Positions positions) {
+        search( new AdvancedSearcher( this.image1, this.image2, 0, this.image1.getWidth() * this.image1.getHeight(), this.listener), positions);
+    }
+
+    /** Includes unpacking both images, as a caller holding only BufferedImages would pay for it. */
+    @Benchmark
+    public void rasterSearcher( final Positions positions) {
+        search( new RasterSearcher( this.image1, this.image2), positions);
+    }
+
+    @Benchmark
+    public void correlationSearcher( final Positions positions) {
+        search( new CorrelationSearcher( this.image1, this.image2), positions);
+    }
+
+    @Benchmark
+    public void integralFilteredSearcher( final Positions positions) {
+        final PackedImage main = PackedImage.of( this.image1);
+        final PackedImage sub = PackedImage.of( this.image2);
+        final RasterMatcher matcher = new RasterMatcher( main, sub);
+        matcher.addFilter( IntegralImageFilter.of( main, sub, matcher.getThreshold()));
+        search( new RasterSearcher( matcher), positions);
+    }
+
+    private void search( final Searcher searcher, final Positions positions) {
+        searcher.runSearch( this.listener);
+        positions.positions += searcher.numberOfPositionsTriedSoFar();
+    }
+}
@@ -0,0 +1,55 @@
+package adp.image.report4;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A {@link DistanceKernel} that computes one full register of distances per iteration with the
+ * {@code jdk.incubator.vector} API. The packed pixels are loaded as ints at half the width of
+ * the preferred double vector, so both have the same number of lanes, and the square roots
+ * are taken on the converted doubles. Leftover pixels go through the scalar formula.
+ * <p>
+ * Only compiled and loaded on Java 16 or later, see {@link DistanceKernels}.
+ */
+public final class VectorDistanceKernel implements DistanceKernel {
+
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS =
+            IntVector.SPECIES_PREFERRED.withShape( VectorShape.forBitSize( DOUBLES.vectorBitSize() / 2));
+
+    @Override
+    public double accumulate( final double difference, final int[] pixels1, final int offset1, final int[] pixels2, final int offset2, final int length) {
+        final int lanes = INTS.length();
+        if ( length < lanes) {
+            return DistanceKernels.scalar().accumulate( difference, pixels1, offset1, pixels2, offset2, length);
+        }
+        DoubleVector sum = DoubleVector.zero( DOUBLES);
+        int i = 0;
+        for( ; i + lanes <= length; i += lanes) {
+            final IntVector rgb1 = IntVector.fromArray( INTS, pixels1, offset1 + i);
+            final IntVector rgb2 = IntVector.fromArray( INTS, pixels2, offset2 + i);
+            final IntVector dRed = channel( rgb1, 16).sub( channel( rgb2, 16));
+            final IntVector dGreen = channel( rgb1, 8).sub( channel( rgb2, 8));
+            final IntVector dBlue = rgb1.and( 0xFF).sub( rgb2.and( 0xFF));
+            final IntVector squared = dRed.mul( dRed).add( dGreen.mul( dGreen)).add( dBlue.mul( dBlue));
+            sum = sum.add( ((DoubleVector) squared.convertShape( VectorOperators.I2D, DOUBLES, 0)).sqrt());
+        }
+        double total = difference + sum.reduceLanes( VectorOperators.ADD);
+        for( ; i < length; i++) {
+            total += RasterMatcher.distance( pixels1[offset1 + i], pixels2[offset2 + i]);
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        return "vector(" + INTS.length() + " lanes)";
+    }
+
+    private static IntVector channel( final IntVector rgb, final int shift) {
+        return rgb.lanewise( VectorOperators.LSHR, shift).and( 0xFF);
+    }
+}
@@ -5,11 +5,15 @@ import java.awt.Graphics;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import javax.imageio.ImageIO;
+import java.util.List;
 
 import adp.image.jar.BasicSearcher;
 import adp.image.jar.Searcher;
 import adp.image.jar.Searcher.SearchListener;
+import adp.image.report4.HaystackPipeline;
+import adp.image.report4.ImageCache;
+import adp.image.report4.ProgressDispatcher;
+import adp.image.report4.RasterCache;
 
 /**
  * This class implements {@link Search.SearchListener} and emits all messages
@@ -21,18 +25,18 @@ public class Demo implements SearchListener {
 
 		BufferedImage[] images = testImages();
 		Searcher searcher = new BasicSearcher( images[0], images[1]);
-		searcher.runSearch( this);
+		searcher.runSearch( new ProgressDispatcher( this));
 
 	}
 
 
 	public Demo( File file1, File file2) throws IOException {
 
-		BufferedImage image1 = ImageIO.read(file1); 
-		BufferedImage image2 = ImageIO.read(file2); 
+		BufferedImage image1 = ImageCache.shared().read(file1); 
+		BufferedImage image2 = ImageCache.shared().read(file2); 
 
 		Searcher searcher = new BasicSearcher( image1, image2);
-		searcher.runSearch( this);
+		searcher.runSearch( new ProgressDispatcher( this));
 
 	}
 
@@ -51,7 +55,11 @@ public class Demo implements SearchListener {
 		System.out.println( "Searching at: " + position + " at " + (elapsedTime / 1000.0) + "s (" + numberOfPositionsTriedSoFar + " positions attempted)");
 	}
 
-	private static BufferedImage[] testImages() {
+	/**
+	 * Returns a synthetic 1000x1000 main image and a 100x100 image to search for in it,
+	 * both black apart from a 10x10 red square.
+	 */
+	public static BufferedImage[] testImages() {
 		BufferedImage i1 = new BufferedImage(1000, 1000, BufferedImage.TYPE_INT_RGB);
 		BufferedImage i2 = new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB);
 
@@ -66,12 +74,47 @@ public class Demo implements SearchListener {
 	}
 
 	/**
-	 * Set the file names to search images of different sizes.
+	 * Searches every image in the directory for the template with a {@link HaystackPipeline},
+	 * printing the matches of each image, one per cluster of adjacent matches, and the overall
+	 * number of images per second.
+	 * When the {@code adp.rasterCache} system property names a directory, decoded images are
+	 * kept there in a {@link RasterCache} for the next run.
+	 */
+	public static void searchDirectory( File directory, File template) throws IOException, InterruptedException {
+		List<File> files = HaystackPipeline.filesIn( directory);
+		HaystackPipeline pipeline = new HaystackPipeline( ImageCache.shared().read( template));
+		RasterCache cache = System.getProperty( RasterCache.DIRECTORY_PROPERTY) != null ? RasterCache.inDefaultDirectory() : null;
+		pipeline.setCache( cache);
+		pipeline.setSuppressNeighbours( true);
+		pipeline.run( files, new HaystackPipeline.Listener() {
+			@Override
+			public void searched( File file, int[] matches, long searchTime) {
+				System.out.println( file.getName() + ": " + matches.length + " possible matches in " + (searchTime / 1000.0) + "s");
+			}
+
+			@Override
+			public void failed( File file, IOException e) {
+				System.out.println( file.getName() + ": " + e.getMessage());
+			}
+		});
+		System.out.println( pipeline.numberOfImagesSearched() + " of " + files.size() + " images searched at " + pipeline.imagesPerSecond() + " images/s");
+		if ( cache != null) {
+			System.out.println( cache.numberOfHits() + " images read from the cache, " + cache.numberOfMisses() + " decoded");
+		}
+	}
+
+	/**
+	 * Set the file names to search images of different sizes. Given a directory and a
+	 * template file, searches every image in the directory instead.
 	 * 
 	 * @param args
 	 * @throws IOException
 	 */
-	public static void main( String[] args) throws IOException {
+	public static void main( String[] args) throws IOException, InterruptedException {
+		if ( args.length == 2 && new File( args[0]).isDirectory()) {
+			searchDirectory( new File( args[0]), new File( args[1]));
+			return;
+		}
 		File file1 = new File( "bigImage1r.jpg");    
 //		File file2 = new File( "small1r.jpg");    
 //		File file2 = new File( "small2r.jpg");    
@@ -1,23 +1,36 @@
 package adp.image.report2;
 
 import adp.image.jar.Searcher;
+import adp.image.report4.Placements;
+import adp.image.report4.ProgressCounter;
+import adp.image.report4.SearchMetrics;
+import adp.image.report4.SearchProgress;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
 
 /**
  * Class providing the basic infrastructure for concrete Searchers.
+ * <p>
+ * Only the positions where the whole of image2 fits into image1 are tried, unless a smaller
+ * overlap is allowed with {@link #setMinimumOverlap(int, int)}.
  */
-public abstract class NewAbstractSearcher extends Thread implements Searcher{
+public abstract class NewAbstractSearcher extends Thread implements Searcher, SearchProgress.Source {
 
     private final BufferedImage image1;
     private final BufferedImage image2;
     private final int firstPosition;
     private final int endPosition;
     private final SearchListener listener;
+    private Placements placements;
 
-    private volatile int counter = 0;
-    private volatile int currentPosition;
+    private final ProgressCounter counter = new ProgressCounter();
+    private final SearchMetrics metrics = SearchMetrics.of( getClass());
+    //Only touched by the searching thread
+    private int currentPosition;
+    //The windows tryPosition gave up on before their last column
+    private long abandoned;
+    private volatile boolean cancelled = false;
 
     /**
      * Constructs an AbstractSearcher that will attempt to find image2 somewhere in image1.
@@ -29,6 +42,7 @@ public abstract class NewAbstractSearcher extends Thread implements Searcher{
         this.endPosition = (image1.getWidth() * image1.getHeight()) - 1;
         this.currentPosition = 0;
         this.listener = listener;
+        setMinimumOverlap( image2.getWidth(), image2.getHeight());
     }
 
     /**
@@ -42,28 +56,65 @@ public abstract class NewAbstractSearcher extends Thread implements Searcher{
         this.endPosition = endPosition;
         this.currentPosition = firstPosition;
         this.listener = listener;
+        setMinimumOverlap( image2.getWidth(), image2.getHeight());
     }
 
-    /** {@inheritDoc} */
+    /**
+     * Sets how many columns and rows of image2 at least have to overlap image1 for a position
+     * to be tried, see {@link adp.image.report4.RasterMatcher#setMinimumOverlap(int, int)}. Must
+     * not be called while a search is running.
+     */
+    public void setMinimumOverlap( final int columns, final int rows) {
+        this.placements = Placements.of( this.image1.getWidth(), this.image1.getHeight(),
+                this.image2.getWidth(), this.image2.getHeight(), columns, rows);
+    }
+
+    /** Returns the number of valid positions between the first and end positions. */
     @Override
     public final int numberOfPositionsToTry() {
-        return this.endPosition - this.firstPosition;
+        return (int) this.placements.count( this.firstPosition, this.endPosition);
     }
 
     /** {@inheritDoc} */
     @Override
     public final int numberOfPositionsTriedSoFar() {
-        return this.counter;
+        return (int) this.counter.positionsTried();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public SearchProgress progress() {
+        return this.counter.snapshot( numberOfPositionsToTry());
     }
 
     /**
-     * Resets the searcher to re-run its search. If any state is added in a subclass, this method
-     * probably needs to be overridden to reset that state, as well as calling this implmentation.
+     * Resets the searcher to re-run its search, also after it has been cancelled.
      */
     @Override
     public void reset() {
-        this.counter = 0;
+        restart();
+        this.cancelled = false;
+    }
+
+    /**
+     * Resets what each run of the search starts from, but keeps a cancel that came before the
+     * run. If any state is added in a subclass, this method probably needs to be overridden to
+     * reset that state, as well as calling this implementation.
+     */
+    protected void restart() {
+        this.counter.start();
         this.currentPosition = this.firstPosition;
+        this.abandoned = 0;
+    }
+
+    /**
+     * Makes a running search throw {@link Searcher.SearchCancelledException} before it tries
+     * its next position. The thread then ends normally after reporting the cancellation. A
+     * search not started yet throws as soon as it starts, until {@link #reset()} is called.
+     */
+    @Override
+    public void cancel() {
+        this.cancelled = true;
     }
 
 //    /**
@@ -72,33 +123,61 @@ public abstract class NewAbstractSearcher extends Thread implements Searcher{
 //     * The SearchListener methods are invoked on the thread that calls this method.
 //     */
     @Override
-    public void runSearch( final SearchListener listener) {
-        this.reset();
+    public void runSearch( final SearchListener listener) throws SearchCancelledException {
+        this.restart();
         listener.information( "SEARCHING...");
         final long startTime = System.currentTimeMillis();
-        while( true) {
-            final int foundMatch = this.findMatch( listener, startTime);
-            if ( foundMatch >= 0) {
-                listener.possibleMatch( foundMatch, System.currentTimeMillis() - startTime, numberOfPositionsTriedSoFar());
-            } else {
-                break;
+        final SearchMetrics.Run run = this.metrics.start( numberOfPositionsToTry());
+        try {
+            while( true) {
+                final int foundMatch = this.findMatch( listener, startTime);
+                if ( foundMatch >= 0) {
+                    run.match( foundMatch);
+                    listener.possibleMatch( foundMatch, System.currentTimeMillis() - startTime, numberOfPositionsTriedSoFar());
+                } else {
+                    break;
+                }
             }
+        } catch ( SearchCancelledException e) {
+            run.cancelled();
+            throw e;
+        } finally {
+            run.end( numberOfPositionsTriedSoFar(), 0, this.abandoned);
         }
         listener.information("Finished at " + ((System.currentTimeMillis() - startTime) / 1000.0) + "s\n");
         //listener.information(this.counter + " positions attempted.");
     }
 
+    //Counts the positions tried locally and adds them to the counter in batches and before returning
     private int findMatch( final SearchListener listener, final long startTime) {
-        while( this.counter < numberOfPositionsToTry()) {
+        final int width = this.image1.getWidth();
+        final int end = (int) Math.min( this.endPosition, this.placements.end());
+        int pending = 0;
+        while( this.currentPosition < end) {
+            if ( this.cancelled) {
+                this.counter.add( pending);
+                listener.information( "Cancelled at " + ((System.currentTimeMillis() - startTime) / 1000.0) + "s\n");
+                throw new SearchCancelledException();
+            }
+            final int x = this.currentPosition % width;
+            if ( x > this.placements.lastX()) {
+                //image2 does not fit anywhere in the rest of the row
+                this.currentPosition += width - x;
+                continue;
+            }
             final boolean hit = tryPosition();
             this.currentPosition++;
-            this.counter++;
+            pending++;
             if ( hit) {
+                this.counter.add( pending);
                 return this.currentPosition - 1;
-            } else if ( this.counter % 1000 == 0) {
+            } else if ( pending == ProgressCounter.BATCH) {
+                this.counter.add( pending);
+                pending = 0;
                 listener.update( this.currentPosition - 1, System.currentTimeMillis() - startTime, numberOfPositionsTriedSoFar());
             }
         }
+        this.counter.add( pending);
         return -1;
     }
 
@@ -110,6 +189,8 @@ public abstract class NewAbstractSearcher extends Thread implements Searcher{
     protected boolean tryPosition() {
         final int x1 = this.currentPosition % this.image1.getWidth();
         final int y1 = this.currentPosition / this.image1.getWidth();
+        final int windowSize = Math.min( this.image2.getWidth(), this.image1.getWidth() - x1)
+                * Math.min( this.image2.getHeight(), this.image1.getHeight() - y1);
         double difference = 0;
         int count = 0;
 
@@ -127,6 +208,13 @@ public abstract class NewAbstractSearcher extends Thread implements Searcher{
                 difference += delta;
                 count++;
             }
+            //Give up early once the remaining pixels can no longer bring the average under 10
+            if ( difference / windowSize >= 10) {
+                if ( x2 < this.image2.getWidth() - 1 && x1 + x2 < this.image1.getWidth() - 1) {
+                    this.abandoned++;
+                }
+                return false;
+            }
         }
         return difference / count < 10; // was 5
     }
@@ -146,6 +234,10 @@ public abstract class NewAbstractSearcher extends Thread implements Searcher{
     }
     //Run the thread
     public void run(){
-        this.runSearch(this.listener);
+        try {
+            this.runSearch(this.listener);
+        } catch ( SearchCancelledException e) {
+            // already reported to the listener, just let the thread end
+        }
     }
 }
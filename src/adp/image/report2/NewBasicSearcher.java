@@ -5,7 +5,7 @@ import adp.image.report2.NewAbstractSearcher;
 import java.awt.image.BufferedImage;
 
 /**
- * A simple concrete implementation of AbstractSearcher that does not support cancellation.
+ * A simple concrete implementation of NewAbstractSearcher.
  */
 public class NewBasicSearcher extends NewAbstractSearcher {
 
@@ -13,12 +13,4 @@ public class NewBasicSearcher extends NewAbstractSearcher {
         super( image1, image2, listener);
     }
 
-    /**
-     * This implementation just throws an UnsupportedOperationException.
-     */
-    @Override
-    public void cancel() {
-        throw new UnsupportedOperationException();
-    }
-
 }
@@ -1,10 +1,6 @@
 package adp.image.report2;
 
 import java.awt.BorderLayout;
-import java.awt.Color;
-import java.awt.Dimension;
-import java.awt.Graphics;
-import java.awt.Graphics2D;
 import java.awt.GridLayout;
 import java.awt.Rectangle;
 import javax.swing.*;
@@ -13,10 +9,7 @@ import java.awt.event.ActionListener;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 
-import javax.imageio.ImageIO;
 import javax.swing.JButton;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
@@ -26,6 +19,10 @@ import javax.swing.SwingUtilities;
 
 import adp.image.jar.Searcher;
 import adp.image.jar.Searcher.SearchListener;
+import adp.image.report4.ImageCache;
+import adp.image.report4.ProgressDispatcher;
+import adp.image.ui.EdtSearchListener;
+import adp.image.ui.ImagePanel;
 
 /**
  * This class implements a basic GUI interface for Searcher
@@ -56,7 +53,7 @@ public class SearchUIEnhancement extends JFrame implements SearchListener {
 
     //Create progress bar
     private JProgressBar progressBar = new JProgressBar();
-    private Thread thread;
+    private NewBasicSearcher thread;
 
     /**
      * Construct an SearchUI and set it visible.
@@ -100,7 +97,7 @@ public class SearchUIEnhancement extends JFrame implements SearchListener {
                     File file = chooser.getSelectedFile();
                     mainFilenameLabel.setText( file.getName());
                     try {
-                        mainImage = ImageIO.read(file);
+                        mainImage = ImageCache.shared().read(file);
                     } catch (IOException e) {
                         // TODO Auto-generated catch block
                         e.printStackTrace();
@@ -120,7 +117,7 @@ public class SearchUIEnhancement extends JFrame implements SearchListener {
                     File file = chooser.getSelectedFile();
                     smallFilenameLabel.setText( file.getName());
                     try {
-                        smallImage = ImageIO.read(file);
+                        smallImage = ImageCache.shared().read(file);
                     } catch (IOException e) {
                         // TODO Auto-generated catch block
                         e.printStackTrace();
@@ -136,7 +133,7 @@ public class SearchUIEnhancement extends JFrame implements SearchListener {
             @Override
             public void actionPerformed( final ActionEvent ev) {
                 startButton.setVisible(false);
-                thread.stop();
+                thread.cancel();
             }
         });
 
@@ -178,7 +175,7 @@ public class SearchUIEnhancement extends JFrame implements SearchListener {
         }
         //Basic Search
         //Create a thread to run for searching
-        this.thread = new NewBasicSearcher(mainImage, smallImage, this);
+        this.thread = new NewBasicSearcher(mainImage, smallImage, new ProgressDispatcher( new EdtSearchListener( this)));
         this.outputLabel.setText("information");
         this.thread.start();
     }
@@ -233,77 +230,6 @@ public class SearchUIEnhancement extends JFrame implements SearchListener {
 
     }
 
-    private static class ImagePanel extends JPanel {
-        private static final long serialVersionUID = 1L;
-
-        private BufferedImage image;
-
-        private List<Rectangle> highlights = new ArrayList<Rectangle>();
-
-        public void setImage( BufferedImage image) {
-            this.image = image;
-
-            double scale = 1;
-
-            if ( image.getWidth() >= image.getHeight()) {
-                if ( image.getWidth() > 800) {
-                    scale = 800.0 / image.getWidth();
-                }
-            } else {
-                if ( image.getHeight() > 800) {
-                    scale = 800.0 / image.getHeight();
-                }
-            }
-            Dimension d = new Dimension(
-                    (int)Math.ceil(image.getWidth() * scale),
-                    (int)Math.ceil(image.getHeight() * scale));
-            //System.out.println( d);
-            setPreferredSize( d);
-
-            invalidate();
-            repaint();
-        }
-
-        public void addHighlight( Rectangle r) {
-            synchronized( highlights) {
-                this.highlights.add( r);
-            }
-            repaint();
-        }
-
-        public void resetHighlights() {
-            synchronized( highlights) {
-                this.highlights.clear();
-            }
-            repaint();
-        }
-
-        @Override
-        public void paintComponent( Graphics g) {
-            if ( this.image != null) {
-                g = g.create();
-                double scale = getWidth() / (double)this.image.getWidth();
-                //System.out.println( scale + "!");
-                g.drawImage( this.image, 0, 0, getWidth(), (int)(this.image.getHeight() * scale), this);
-                //System.out.println( ">>>" + completed);
-                g.setColor( Color.YELLOW);
-                synchronized( highlights) {
-                    for( Rectangle r : highlights) {
-                        Rectangle s = new Rectangle(
-                                (int)(r.x * scale),
-                                (int)(r.y * scale),
-                                (int)(r.width * scale),
-                                (int)(r.height * scale));
-                        ((Graphics2D) g).draw( s);
-                        //System.out.println( r + " >> " + s);
-                    }
-                }
-            }
-        }
-
-    }
-
-
     public static void main( final String[] args) {
         SwingUtilities.invokeLater(
                 new Runnable() {
@@ -1,86 +1,142 @@
 package adp.image.report3;
 
 import adp.image.jar.Searcher;
+import adp.image.report4.Placements;
+import adp.image.report4.ProgressCounter;
+import adp.image.report4.SearchEvents;
+import adp.image.report4.SearchMetrics;
+import adp.image.report4.SearchProgress;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
 
-public class AdvancedAbstractSearcher extends RecursiveTask<Integer> implements Searcher {
+/**
+ * Searcher that splits its positions into row-aligned chunks and tries them in parallel
+ * as fork-join tasks. Idle workers steal the unstarted halves of other workers' chunks.
+ * <p>
+ * Matches are collected per chunk and reported to the listener in position order once every
+ * chunk has finished. Progress updates are issued from the worker threads as they go.
+ * <p>
+ * {@link #cancel()} is seen by every chunk before its next position, so running chunks stop
+ * and queued ones finish without scanning, and the search throws
+ * {@link Searcher.SearchCancelledException}.
+ * <p>
+ * Only the positions where the whole of image2 fits into image1 are tried, unless a smaller
+ * overlap is allowed with {@link #setMinimumOverlap(int, int)}.
+ */
+public class AdvancedAbstractSearcher extends RecursiveTask<Integer> implements Searcher, SearchProgress.Source {
+
+    /** Default number of image rows a chunk may cover before it is split further. */
+    public static final int DEFAULT_ROWS_PER_TASK = 8;
 
     private final BufferedImage image1;
     private final BufferedImage image2;
     private final int firstPosition;
     private final int endPosition;
-    private final SearchListener listener;
-    private volatile int counter = 0;
-    private volatile int currentPosition;
+    private final int rowsPerTask;
+    private Placements placements;
+    private SearchListener listener;
+    private final ProgressCounter counter = new ProgressCounter();
+    //The windows tryPosition gave up on before their last column
+    private final LongAdder abandoned = new LongAdder();
+    private final SearchMetrics metrics = SearchMetrics.of( getClass());
+    private SearchMetrics.Run run;
+    private volatile long startTime;
+    private volatile boolean cancelled = false;
 
     protected AdvancedAbstractSearcher(final BufferedImage image1, final BufferedImage image2, final int firstPosition, final int endPosition, SearchListener listener) {
+        this(image1, image2, firstPosition, endPosition, DEFAULT_ROWS_PER_TASK, listener);
+    }
+
+    /**
+     * Constructs a searcher for the positions between {@code firstPosition} (inclusive) and
+     * {@code endPosition} (exclusive) whose leaf tasks cover at most {@code rowsPerTask} rows.
+     */
+    protected AdvancedAbstractSearcher(final BufferedImage image1, final BufferedImage image2, final int firstPosition, final int endPosition, final int rowsPerTask, SearchListener listener) {
+        if ( rowsPerTask < 1) {
+            throw new IllegalArgumentException( "rowsPerTask must be at least 1: " + rowsPerTask);
+        }
         this.image1 = image1;
         this.image2 = image2;
         this.firstPosition = firstPosition;
         this.endPosition = endPosition;
-        this.currentPosition = firstPosition;
+        this.rowsPerTask = rowsPerTask;
         this.listener = listener;
+        setMinimumOverlap( image2.getWidth(), image2.getHeight());
+    }
+
+    /**
+     * Sets how many columns and rows of image2 at least have to overlap image1 for a position
+     * to be tried, see {@link adp.image.report4.RasterMatcher#setMinimumOverlap(int, int)}. Must
+     * not be called while a search is running.
+     */
+    public void setMinimumOverlap( final int columns, final int rows) {
+        this.placements = Placements.of( this.image1.getWidth(), this.image1.getHeight(),
+                this.image2.getWidth(), this.image2.getHeight(), columns, rows);
     }
 
+    /** Returns the number of valid positions between the first and end positions. */
     @Override
     public int numberOfPositionsToTry() {
-        return this.endPosition - this.firstPosition;
+        return (int) this.placements.count( this.firstPosition, this.endPosition);
     }
 
     @Override
     public int numberOfPositionsTriedSoFar() {
-        return this.counter;
+        return (int) this.counter.positionsTried();
     }
 
+    /** Returns the positions tried by all chunks together. */
     @Override
-    public void reset() {
-        this.counter = 0;
-        this.currentPosition = this.firstPosition;
+    public SearchProgress progress() {
+        return this.counter.snapshot( numberOfPositionsToTry());
     }
 
+    /**
+     * Resets the searcher so that it can be invoked again, also after it has been cancelled.
+     * Must not be called while a search is running.
+     */
     @Override
-    public void cancel() {
+    public void reset() {
+        restart();
+        this.cancelled = false;
+    }
 
+    //Resets what a run starts from, but keeps a cancel that came before the run
+    private void restart() {
+        this.counter.start();
+        this.abandoned.reset();
+        reinitialize();
     }
 
+    /**
+     * Makes every chunk of a running search stop before its next position. A search not
+     * started yet stops as soon as it starts, until {@link #reset()} is called.
+     */
     @Override
-    public void runSearch( final SearchListener listener) {
-        this.reset();
-        listener.information( "SEARCHING...");
-        final long startTime = System.currentTimeMillis();
-        while( true) {
-            final int foundMatch = this.findMatch( listener, startTime);
-            if ( foundMatch >= 0) {
-                listener.possibleMatch( foundMatch, System.currentTimeMillis() - startTime, numberOfPositionsTriedSoFar());
-            } else {
-                break;
-            }
-        }
-        listener.information("Finished at " + ((System.currentTimeMillis() - startTime) / 1000.0) + "s\n");
+    public void cancel() {
+        this.cancelled = true;
     }
 
-    //A loop to searching the small image (image2)
-    private int findMatch( final SearchListener listener, final long startTime) {
-        while( this.counter < numberOfPositionsToTry()) {
-            final boolean hit = tryPosition();
-            this.currentPosition++;
-            this.counter++;
-            if ( hit) {
-                return this.currentPosition - 1;
-            } else if ( this.counter % 1000 == 0) {
-                listener.update( this.currentPosition - 1, System.currentTimeMillis() - startTime, numberOfPositionsTriedSoFar());
-            }
-        }
-        return -1;
+    /**
+     * Runs the whole search in the calling thread's fork-join pool, or the common pool
+     * when called from outside one, and returns once every chunk has finished.
+     */
+    @Override
+    public void runSearch( final SearchListener listener) throws SearchCancelledException {
+        this.restart();
+        this.listener = listener;
+        this.invoke();
     }
 
-    //Checking that image2 is found or not
-    protected boolean tryPosition() {
-        final int x1 = this.currentPosition % this.image1.getWidth();
-        final int y1 = this.currentPosition / this.image1.getWidth();
+    //Checking that image2 is found at the given position or not
+    protected boolean tryPosition( final int position) {
+        final int x1 = position % this.image1.getWidth();
+        final int y1 = position / this.image1.getWidth();
+        final int windowSize = Math.min( this.image2.getWidth(), this.image1.getWidth() - x1)
+                * Math.min( this.image2.getHeight(), this.image1.getHeight() - y1);
         double difference = 0;
         int count = 0;
 
@@ -98,6 +154,13 @@ public class AdvancedAbstractSearcher extends RecursiveTask<Integer> implements
                 difference += delta;
                 count++;
             }
+            //Give up early once the remaining pixels can no longer bring the average under 10
+            if ( difference / windowSize >= 10) {
+                if ( x2 < this.image2.getWidth() - 1 && x1 + x2 < this.image1.getWidth() - 1) {
+                    this.abandoned.increment();
+                }
+                return false;
+            }
         }
         return difference / count < 10; // was 5
     }
@@ -117,21 +180,124 @@ public class AdvancedAbstractSearcher extends RecursiveTask<Integer> implements
 
     @Override
     protected Integer compute() {
-        //Checking if the range of the searching points is under the number all points that need searching
-        //By other way, it means that we divide the image into 2 parts (2 subTasks) to handle compute
-        if ( endPosition - firstPosition < (image1.getWidth()*image1.getHeight()) ) {
-            this.runSearch(this.listener);
-            return this.counter;
+        final SearchListener listener = this.listener;
+        listener.information( "SEARCHING...");
+        this.startTime = System.currentTimeMillis();
+        //Forking the chunks publishes it to the workers
+        final SearchMetrics.Run run = this.metrics.start( numberOfPositionsToTry());
+        this.run = run;
+
+        //Run the root chunk in this worker, it forks the rest
+        final MatchList matches;
+        try {
+            matches = new Chunk( this.firstPosition, (int) Math.min( this.endPosition, this.placements.end())).compute();
+        } catch ( SearchCancelledException e) {
+            run.cancelled();
+            listener.information( "Cancelled at " + ((System.currentTimeMillis() - this.startTime) / 1000.0) + "s\n");
+            throw e;
+        } finally {
+            run.end( numberOfPositionsTriedSoFar(), 0, this.abandoned.sum());
+        }
 
-        } else {
-            //divide mainTask into 2 subTasks and return the number of all searched points at last
-            int middle = endPosition / 2;
+        for( int i = 0; i < matches.size(); i++) {
+            listener.possibleMatch( matches.position(i), matches.elapsedTime(i), matches.positionsTried(i));
+        }
+        listener.information("Finished at " + ((System.currentTimeMillis() - this.startTime) / 1000.0) + "s\n");
+        return numberOfPositionsTriedSoFar();
+    }
+
+    /**
+     * One range of positions. Ranges wider than the granularity are halved on a row boundary,
+     * the left half is forked so it can be stolen and the right half is computed in place.
+     */
+    private final class Chunk extends RecursiveTask<MatchList> {
+        private static final long serialVersionUID = 1L;
 
-            AdvancedAbstractSearcher subTask1 = new AdvancedAbstractSearcher(image1, image2, firstPosition, middle, this.listener);
-            AdvancedAbstractSearcher subTask2 = new AdvancedAbstractSearcher(image1, image2, middle, endPosition, this.listener);
+        private final int first;
+        private final int end;
+
+        Chunk( final int first, final int end) {
+            this.first = first;
+            this.end = end;
+        }
 
-            invokeAll(subTask1, subTask2);
-            return (subTask1.counter + subTask2.counter);
+        @Override
+        protected MatchList compute() {
+            if ( cancelled) {
+                throw new SearchCancelledException();
+            }
+            final int width = image1.getWidth();
+            if ( this.end - this.first <= (long) rowsPerTask * width) {
+                return scan();
+            }
+            int middle = ((this.first + (this.end - this.first) / 2) / width) * width;
+            if ( middle <= this.first) {
+                middle += width;
+            }
+            final Chunk left = new Chunk( this.first, middle);
+            final Chunk right = new Chunk( middle, this.end);
+            left.fork();
+            final MatchList rightMatches;
+            try {
+                rightMatches = right.compute();
+            } catch ( SearchCancelledException e) {
+                //Drop the left half too if nobody has stolen it yet
+                left.cancel( true);
+                throw e;
+            }
+            final MatchList matches = left.join();
+            matches.addAll( rightMatches);
+            return matches;
+        }
+
+        //A loop trying every position of a leaf chunk
+        private MatchList scan() {
+            final SearchEvents.Chunk event = new SearchEvents.Chunk();
+            event.begin();
+            final long scanStart = System.nanoTime();
+            final SearchListener listener = AdvancedAbstractSearcher.this.listener;
+            final MatchList matches = new MatchList();
+            final int width = image1.getWidth();
+            final int lastX = placements.lastX();
+            int pending = 0;
+            int tried = 0;
+            try {
+                for( int position = this.first; position < this.end; position++) {
+                    if ( cancelled) {
+                        throw new SearchCancelledException();
+                    }
+                    final int x = position % width;
+                    if ( x > lastX) {
+                        //Skip to the end of the row
+                        position += width - x - 1;
+                        continue;
+                    }
+                    final boolean hit = tryPosition( position);
+                    pending++;
+                    tried++;
+                    if ( hit) {
+                        run.match( position);
+                        matches.add( position, System.currentTimeMillis() - startTime, counter.positionsTried() + pending);
+                    }
+                    if ( pending == ProgressCounter.BATCH) {
+                        counter.add( pending);
+                        pending = 0;
+                        listener.update( position, System.currentTimeMillis() - startTime, counter.positionsTried());
+                    }
+                }
+            } finally {
+                counter.add( pending);
+                metrics.workerBusy( System.nanoTime() - scanStart);
+                event.end();
+                if ( event.shouldCommit()) {
+                    event.searcher = metrics.getSearcher();
+                    event.first = this.first;
+                    event.end = this.end;
+                    event.positionsTried = tried;
+                    event.commit();
+                }
+            }
+            return matches;
         }
     }
 }
@@ -8,8 +8,7 @@ public class AdvancedSearcher extends AdvancedAbstractSearcher {
         super(image1, image2, firstPosition, endPosition, listener);
     }
 
-    @Override
-    public void cancel() {
-        throw new UnsupportedOperationException();
+    public AdvancedSearcher(BufferedImage image1, BufferedImage image2, int firstPosition, int endPosition, int rowsPerTask, SearchListener listener) {
+        super(image1, image2, firstPosition, endPosition, rowsPerTask, listener);
     }
 }
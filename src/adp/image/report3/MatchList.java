@@ -0,0 +1,60 @@
+package adp.image.report3;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of the matches found by one part of a parallel search, together with
+ * the elapsed time and number of positions tried when each one was found. Lists from
+ * neighbouring parts are appended to each other so the matches stay in position order.
+ */
+final class MatchList {
+
+    private int[] positions = new int[4];
+    private long[] elapsedTimes = new long[4];
+    private long[] positionsTried = new long[4];
+    private int size = 0;
+
+    void add( final int position, final long elapsedTime, final long positionsTriedSoFar) {
+        if ( this.size == this.positions.length) {
+            grow( this.size + 1);
+        }
+        this.positions[this.size] = position;
+        this.elapsedTimes[this.size] = elapsedTime;
+        this.positionsTried[this.size] = positionsTriedSoFar;
+        this.size++;
+    }
+
+    /** Appends all matches of {@code other}, which must lie after the matches already in this list. */
+    void addAll( final MatchList other) {
+        if ( this.size + other.size > this.positions.length) {
+            grow( this.size + other.size);
+        }
+        System.arraycopy( other.positions, 0, this.positions, this.size, other.size);
+        System.arraycopy( other.elapsedTimes, 0, this.elapsedTimes, this.size, other.size);
+        System.arraycopy( other.positionsTried, 0, this.positionsTried, this.size, other.size);
+        this.size += other.size;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    int position( final int index) {
+        return this.positions[index];
+    }
+
+    long elapsedTime( final int index) {
+        return this.elapsedTimes[index];
+    }
+
+    long positionsTried( final int index) {
+        return this.positionsTried[index];
+    }
+
+    private void grow( final int minimum) {
+        final int capacity = Math.max( minimum, this.positions.length * 2);
+        this.positions = Arrays.copyOf( this.positions, capacity);
+        this.elapsedTimes = Arrays.copyOf( this.elapsedTimes, capacity);
+        this.positionsTried = Arrays.copyOf( this.positionsTried, capacity);
+    }
+}
@@ -0,0 +1,237 @@
+package adp.image.report4;
+
+import adp.image.jar.Searcher;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A Searcher that looks for several templates in the same main image in a single pass. Every
+ * template is tried at a position before the search moves on, so the part of the main image
+ * under the window is read from cache by all but the first of them, and the main image is
+ * unpacked only once.
+ * <p>
+ * Matches are reported as they are found, in position order and by template within a
+ * position. A {@link BatchSearchListener} is told which template matched; a plain
+ * {@link Searcher.SearchListener} only gets the position.
+ * <p>
+ * {@link #numberOfPositionsTriedSoFar()} counts positions of the main image, each of which
+ * has been tried against every template whose {@link RasterMatcher#getPlacements()} contain it.
+ */
+public class BatchSearcher implements Searcher, SearchProgress.Source {
+
+    /**
+     * A SearchListener that also learns which template matched. Its
+     * {@link #possibleMatch(int, long, long)} is not called by a BatchSearcher.
+     */
+    public interface BatchSearchListener extends SearchListener {
+
+        /**
+         * Called when the template with the given index, in the order the templates were
+         * passed to the BatchSearcher, appears to match at the given position.
+         */
+        void possibleMatch( int template, int position, long elapsedTime, long positionsTriedSoFar);
+    }
+
+    private final RasterMatcher[] matchers;
+
+    private final ProgressCounter counter = new ProgressCounter();
+    private final SearchMetrics metrics = SearchMetrics.of( getClass());
+    private volatile boolean cancelled = false;
+
+    /**
+     * Constructs a BatchSearcher that will attempt to find each of the templates somewhere
+     * in image1.
+     */
+    public BatchSearcher( final BufferedImage image1, final List<BufferedImage> templates) {
+        this( PackedImage.of( image1), pack( templates));
+    }
+
+    /**
+     * Constructs a BatchSearcher that will attempt to find each of the templates somewhere
+     * in image1 with the default threshold.
+     */
+    public BatchSearcher( final PackedImage image1, final List<PackedImage> templates) {
+        this( matchers( image1, templates));
+    }
+
+    /**
+     * Constructs a BatchSearcher from already configured matchers, which must all share the
+     * same main image.
+     */
+    public BatchSearcher( final List<RasterMatcher> matchers) {
+        if ( matchers.isEmpty()) {
+            throw new IllegalArgumentException( "At least one template is needed");
+        }
+        this.matchers = matchers.toArray( new RasterMatcher[0]);
+        for( RasterMatcher matcher : this.matchers) {
+            if ( matcher.getMainImage() != this.matchers[0].getMainImage()) {
+                throw new IllegalArgumentException( "All matchers must search the same main image");
+            }
+        }
+    }
+
+    /** Returns the number of templates searched for. */
+    public int numberOfTemplates() {
+        return this.matchers.length;
+    }
+
+    /** Returns the matcher for the template with the given index. */
+    public RasterMatcher getMatcher( final int template) {
+        return this.matchers[template];
+    }
+
+    /**
+     * Returns the number of positions in the smallest rectangle holding the valid positions of
+     * every template. Templates of different sizes may leave some of them valid for none.
+     */
+    @Override
+    public int numberOfPositionsToTry() {
+        return (lastX() + 1) * (lastY() + 1);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int numberOfPositionsTriedSoFar() {
+        return (int) this.counter.positionsTried();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public SearchProgress progress() {
+        return this.counter.snapshot( numberOfPositionsToTry());
+    }
+
+    /** Resets the searcher to re-run its search, also after it has been cancelled. */
+    @Override
+    public void reset() {
+        restart();
+        this.cancelled = false;
+    }
+
+    //Resets what a run starts from, but keeps a cancel that came before the run
+    private void restart() {
+        for( RasterMatcher matcher : this.matchers) {
+            matcher.resetStatistics();
+        }
+        this.counter.start();
+    }
+
+    /**
+     * Makes a running search throw {@link Searcher.SearchCancelledException} before it tries
+     * its next position. A search not started yet throws as soon as it starts, until
+     * {@link #reset()} is called.
+     */
+    @Override
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    /**
+     * Tries every template at every position of the main image, emitting each match to the
+     * provided listener as it is found. The SearchListener methods are invoked on the thread
+     * that calls this method.
+     */
+    @Override
+    public void runSearch( final SearchListener listener) throws SearchCancelledException {
+        this.restart();
+        listener.information( "SEARCHING " + this.matchers.length + " TEMPLATES...");
+        final BatchSearchListener batchListener = listener instanceof BatchSearchListener ? (BatchSearchListener) listener : null;
+        final RasterMatcher[] matchers = this.matchers;
+        final int width = matchers[0].getMainImage().getWidth();
+        final int lastX = lastX();
+        final int end = (lastY() + 1) * width;
+        final long startTime = System.currentTimeMillis();
+        final SearchMetrics.Run run = this.metrics.start( numberOfPositionsToTry());
+
+        int pending = 0;
+        try {
+            for( int position = 0; position < end; position++) {
+                if ( this.cancelled) {
+                    listener.information( "Cancelled at " + ((System.currentTimeMillis() - startTime) / 1000.0) + "s\n");
+                    run.cancelled();
+                    throw new SearchCancelledException();
+                }
+                final int x1 = position % width;
+                final int y1 = position / width;
+                if ( x1 > lastX) {
+                    //No template fits anywhere in the rest of the row
+                    position += width - x1 - 1;
+                    continue;
+                }
+                pending++;
+                for( int template = 0; template < matchers.length; template++) {
+                    if ( matchers[template].getPlacements().contains( x1, y1) && matchers[template].matches( x1, y1)) {
+                        this.counter.add( pending);
+                        pending = 0;
+                        run.match( position);
+                        if ( batchListener != null) {
+                            batchListener.possibleMatch( template, position, System.currentTimeMillis() - startTime, numberOfPositionsTriedSoFar());
+                        } else {
+                            listener.possibleMatch( position, System.currentTimeMillis() - startTime, numberOfPositionsTriedSoFar());
+                        }
+                    }
+                }
+                if ( pending == ProgressCounter.BATCH) {
+                    this.counter.add( pending);
+                    pending = 0;
+                    listener.update( position, System.currentTimeMillis() - startTime, numberOfPositionsTriedSoFar());
+                }
+            }
+        } finally {
+            this.counter.add( pending);
+            run.end( numberOfPositionsTriedSoFar(), numberOfPruned() / matchers.length, numberOfAbandoned() / matchers.length);
+        }
+        listener.information("Finished at " + ((System.currentTimeMillis() - startTime) / 1000.0) + "s\n");
+    }
+
+    //The largest valid x and y of any template, -1 if there is none
+    private int lastX() {
+        int lastX = -1;
+        for( RasterMatcher matcher : this.matchers) {
+            lastX = Math.max( lastX, matcher.getPlacements().lastX());
+        }
+        return lastX;
+    }
+
+    private int lastY() {
+        int lastY = -1;
+        for( RasterMatcher matcher : this.matchers) {
+            lastY = Math.max( lastY, matcher.getPlacements().lastY());
+        }
+        return lastY;
+    }
+
+    private long numberOfPruned() {
+        long pruned = 0;
+        for( RasterMatcher matcher : this.matchers) {
+            pruned += matcher.numberOfPruned();
+        }
+        return pruned;
+    }
+
+    private long numberOfAbandoned() {
+        long abandoned = 0;
+        for( RasterMatcher matcher : this.matchers) {
+            abandoned += matcher.numberOfAbandoned();
+        }
+        return abandoned;
+    }
+
+    private static List<PackedImage> pack( final List<BufferedImage> templates) {
+        final List<PackedImage> packed = new ArrayList<PackedImage>( templates.size());
+        for( BufferedImage template : templates) {
+            packed.add( PackedImage.of( template));
+        }
+        return packed;
+    }
+
+    private static List<RasterMatcher> matchers( final PackedImage image1, final List<PackedImage> templates) {
+        final List<RasterMatcher> matchers = new ArrayList<RasterMatcher>( templates.size());
+        for( PackedImage template : templates) {
+            matchers.add( new RasterMatcher( image1, template));
+        }
+        return matchers;
+    }
+}
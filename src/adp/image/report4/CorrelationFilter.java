@@ -0,0 +1,232 @@
+package adp.image.report4;
+
+import adp.image.jar.Searcher.SearchCancelledException;
+
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A {@link WindowFilter} built from the whole sum-of-squared-differences surface, which is
+ * computed at once by FFT cross-correlation instead of window by window.
+ * <p>
+ * For a window of n pixels whose squared colour distances add up to S, the distances themselves
+ * add up to at least S divided by the largest distance any pixel pair in it can have. That
+ * distance is bounded from the per channel minimum and maximum of the window and of the
+ * template, which on real images is far tighter than the largest possible colour distance. A
+ * window is rejected when the lower bound already keeps its average at or above the threshold,
+ * so no match is ever lost.
+ */
+public final class CorrelationFilter implements WindowFilter {
+
+    private final int height;
+    private final boolean[] candidates;
+    private final int numberOfCandidates;
+
+    private CorrelationFilter( final int height, final boolean[] candidates, final int numberOfCandidates) {
+        this.height = height;
+        this.candidates = candidates;
+        this.numberOfCandidates = numberOfCandidates;
+    }
+
+    /**
+     * Computes the surface for every position of image1, truncating windows at the right and
+     * bottom edges the same way {@link RasterMatcher} does.
+     */
+    public static CorrelationFilter of( final PackedImage image1, final PackedImage image2, final double threshold) {
+        return of( image1, image2, threshold, () -> false);
+    }
+
+    /**
+     * Computes the surface as {@link #of(PackedImage, PackedImage, double)} does, checking
+     * between the rows and columns of every pass whether to stop.
+     *
+     * @throws SearchCancelledException as soon as cancelled returns true
+     */
+    public static CorrelationFilter of( final PackedImage image1, final PackedImage image2, final double threshold, final BooleanSupplier cancelled) {
+        final int width1 = image1.getWidth();
+        final int height1 = image1.getHeight();
+        final int width2 = image2.getWidth();
+        final int height2 = image2.getHeight();
+        final double[] correlation = correlate( image1, image2, cancelled);
+        final int[] maxSquared = maxSquaredDistances( image1, image2, cancelled);
+        final int paddedHeight = Fft.paddedSize( height1 + height2 - 1);
+
+        final long[] energy1 = squaredSums( image1);
+        final long[] energy2 = squaredSums( image2);
+        final double tolerance = 1e-8 * Math.sqrt( (double) energy1[energy1.length - 1] * energy2[energy2.length - 1]) + 1;
+
+        final boolean[] candidates = new boolean[width1 * height1];
+        int numberOfCandidates = 0;
+        for( int x = 0; x < width1; x++) {
+            checkCancelled( cancelled);
+            final int columns = Math.min( width2, width1 - x);
+            for( int y = 0; y < height1; y++) {
+                final int rows = Math.min( height2, height1 - y);
+                final double ssd = rectangle( energy1, height1, x, y, columns, rows)
+                        - 2 * correlation[x * paddedHeight + y]
+                        + rectangle( energy2, height2, 0, 0, columns, rows);
+                final double maxDistance = Math.sqrt( maxSquared[x * height1 + y]);
+                final boolean candidate = ssd - tolerance < threshold * maxDistance * columns * rows * (1 + 1e-9);
+                candidates[x * height1 + y] = candidate;
+                if ( candidate) {
+                    numberOfCandidates++;
+                }
+            }
+        }
+        return new CorrelationFilter( height1, candidates, numberOfCandidates);
+    }
+
+    @Override
+    public boolean mayMatch( final int x1, final int y1) {
+        return this.candidates[x1 * this.height + y1];
+    }
+
+    /** Returns how many positions the filter lets through. */
+    public int numberOfCandidates() {
+        return this.numberOfCandidates;
+    }
+
+    //Sum over the channels of the circular cross-correlation, zero padded so nothing wraps
+    private static double[] correlate( final PackedImage image1, final PackedImage image2, final BooleanSupplier cancelled) {
+        final int width = Fft.paddedSize( image1.getWidth() + image2.getWidth() - 1);
+        final int height = Fft.paddedSize( image1.getHeight() + image2.getHeight() - 1);
+        final double[] sumRe = new double[width * height];
+        final double[] sumIm = new double[width * height];
+        final double[] re = new double[width * height];
+        final double[] im = new double[width * height];
+
+        for( int shift = 16; shift >= 0; shift -= 8) {
+            // both real inputs go through one complex transform, image1 as the real part
+            channel( image1, shift, re, height);
+            channel( image2, shift, im, height);
+            Fft.transform2d( re, im, width, height, false, cancelled);
+            for( int x = 0; x < width; x++) {
+                final int mirrorX = (width - x) & (width - 1);
+                for( int y = 0; y < height; y++) {
+                    final int i = x * height + y;
+                    final int mirror = mirrorX * height + ((height - y) & (height - 1));
+                    // F1 = (Z[k] + conj(Z[-k])) / 2, F2 = (Z[k] - conj(Z[-k])) / 2i
+                    final double re1 = (re[i] + re[mirror]) / 2;
+                    final double im1 = (im[i] - im[mirror]) / 2;
+                    final double re2 = (im[i] + im[mirror]) / 2;
+                    final double im2 = (re[mirror] - re[i]) / 2;
+                    // F1 * conj(F2)
+                    sumRe[i] += re1 * re2 + im1 * im2;
+                    sumIm[i] += im1 * re2 - re1 * im2;
+                }
+            }
+        }
+        Fft.transform2d( sumRe, sumIm, width, height, true, cancelled);
+        return sumRe;
+    }
+
+    /**
+     * Returns for every window of image1 the square of the largest colour distance one of its
+     * pixels can have from any pixel of image2, from the channel ranges of both.
+     */
+    private static int[] maxSquaredDistances( final PackedImage image1, final PackedImage image2, final BooleanSupplier cancelled) {
+        final int width = image1.getWidth();
+        final int height = image1.getHeight();
+        final int[] maxSquared = new int[width * height];
+        final int[] values = new int[width * height];
+        for( int shift = 16; shift >= 0; shift -= 8) {
+            int min2 = 255;
+            int max2 = 0;
+            for( int rgb : image2.pixels()) {
+                min2 = Math.min( min2, (rgb >> shift) & 0xFF);
+                max2 = Math.max( max2, (rgb >> shift) & 0xFF);
+            }
+            final int[] pixels = image1.pixels();
+            for( int i = 0; i < pixels.length; i++) {
+                values[i] = (pixels[i] >> shift) & 0xFF;
+            }
+            final int[] max1 = windowMaxima( values, width, height, image2.getWidth(), image2.getHeight(), cancelled);
+            for( int i = 0; i < pixels.length; i++) {
+                values[i] = -((pixels[i] >> shift) & 0xFF);
+            }
+            final int[] negatedMin1 = windowMaxima( values, width, height, image2.getWidth(), image2.getHeight(), cancelled);
+            for( int i = 0; i < maxSquared.length; i++) {
+                final int spread = Math.max( max1[i] - min2, max2 + negatedMin1[i]);
+                maxSquared[i] += spread * spread;
+            }
+        }
+        return maxSquared;
+    }
+
+    //The maximum over every window of columns x rows values, truncated at the right and bottom edges
+    private static int[] windowMaxima( final int[] values, final int width, final int height, final int columns, final int rows, final BooleanSupplier cancelled) {
+        final int[] vertical = new int[values.length];
+        final int[] deque = new int[Math.max( width, height)];
+        for( int x = 0; x < width; x++) {
+            checkCancelled( cancelled);
+            slidingMaxima( values, vertical, x * height, 1, height, rows, deque);
+        }
+        final int[] maxima = new int[values.length];
+        for( int y = 0; y < height; y++) {
+            checkCancelled( cancelled);
+            slidingMaxima( vertical, maxima, y, height, width, columns, deque);
+        }
+        return maxima;
+    }
+
+    //Monotonic queue over the n values at offset + i * stride, each window starting at i
+    private static void slidingMaxima( final int[] values, final int[] maxima, final int offset, final int stride, final int n, final int length, final int[] deque) {
+        // indices of decreasing values, the oldest and largest at head
+        int head = 0;
+        int tail = 0;
+        for( int i = n - 1; i >= 0; i--) {
+            final int value = values[offset + i * stride];
+            while( tail > head && values[offset + deque[tail - 1] * stride] <= value) {
+                tail--;
+            }
+            deque[tail++] = i;
+            if ( deque[head] >= i + length) {
+                head++;
+            }
+            maxima[offset + i * stride] = values[offset + deque[head] * stride];
+        }
+    }
+
+    private static void checkCancelled( final BooleanSupplier cancelled) {
+        if ( cancelled.getAsBoolean()) {
+            throw new SearchCancelledException();
+        }
+    }
+
+    private static void channel( final PackedImage image, final int shift, final double[] values, final int paddedHeight) {
+        Arrays.fill( values, 0);
+        final int[] pixels = image.pixels();
+        final int height = image.getHeight();
+        for( int x = 0; x < image.getWidth(); x++) {
+            for( int y = 0; y < height; y++) {
+                values[x * paddedHeight + y] = (pixels[x * height + y] >> shift) & 0xFF;
+            }
+        }
+    }
+
+    //Summed-area table of squared pixel norms, (width + 1) x (height + 1) column by column
+    private static long[] squaredSums( final PackedImage image) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int[] pixels = image.pixels();
+        final long[] sums = new long[(width + 1) * (height + 1)];
+        for( int x = 0; x < width; x++) {
+            long column = 0;
+            for( int y = 0; y < height; y++) {
+                final int rgb = pixels[x * height + y];
+                final int red = (rgb >> 16) & 0xFF;
+                final int green = (rgb >> 8) & 0xFF;
+                final int blue = rgb & 0xFF;
+                column += red * red + green * green + blue * blue;
+                sums[(x + 1) * (height + 1) + y + 1] = sums[x * (height + 1) + y + 1] + column;
+            }
+        }
+        return sums;
+    }
+
+    private static long rectangle( final long[] sums, final int height, final int x, final int y, final int columns, final int rows) {
+        final int stride = height + 1;
+        return sums[(x + columns) * stride + y + rows] - sums[x * stride + y + rows]
+                - sums[(x + columns) * stride + y] + sums[x * stride + y];
+    }
+}
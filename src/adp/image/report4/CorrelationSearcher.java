@@ -0,0 +1,101 @@
+package adp.image.report4;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * A {@link RasterSearcher} for large templates. Before scanning, it computes the whole
+ * sum-of-squared-differences surface by FFT and installs it as a {@link CorrelationFilter},
+ * so most windows are rejected without being scored. The remaining windows are scored
+ * exactly, so the reported matches are the same as RasterSearcher's.
+ * <p>
+ * Whether the surface is worth computing is decided from the image sizes, and it is never
+ * computed when its buffers would take more than a quarter of the heap. Otherwise the
+ * searcher simply scores every window directly. {@link #cancel()} also stops the transforms.
+ */
+public class CorrelationSearcher extends RasterSearcher {
+
+    /** Templates with fewer pixels than this are always scored directly. */
+    public static final int MIN_TEMPLATE_AREA = 64;
+    /** The largest share of the maximum heap size the correlation buffers may take. */
+    public static final double MAX_HEAP_FRACTION = 0.25;
+
+    private final boolean correlating;
+    private CorrelationFilter filter;
+
+    /**
+     * Constructs a CorrelationSearcher that will attempt to find image2 somewhere in image1.
+     */
+    public CorrelationSearcher( final BufferedImage image1, final BufferedImage image2) {
+        this( new RasterMatcher( PackedImage.of( image1), PackedImage.of( image2)));
+    }
+
+    /**
+     * Constructs a CorrelationSearcher that will attempt to find image2 somewhere in image1
+     * using an already configured matcher.
+     */
+    public CorrelationSearcher( final RasterMatcher matcher) {
+        super( matcher);
+        this.correlating = prefersCorrelation( matcher.getMainImage(), matcher.getSubImage());
+    }
+
+    /**
+     * Returns true if computing the correlation surface is expected to be cheaper than scoring
+     * every window directly, comparing the pixel pairs of a direct scan with the butterflies
+     * of the four transforms. A butterfly costs about six early-abandoned pixel comparisons.
+     * Returns false if the buffers, see {@link #correlationBytes(PackedImage, PackedImage)},
+     * would take more than {@link #MAX_HEAP_FRACTION} of the maximum heap size.
+     */
+    public static boolean prefersCorrelation( final PackedImage image1, final PackedImage image2) {
+        final long templateArea = (long) image2.getWidth() * image2.getHeight();
+        if ( templateArea < MIN_TEMPLATE_AREA) {
+            return false;
+        }
+        if ( correlationBytes( image1, image2) > MAX_HEAP_FRACTION * Runtime.getRuntime().maxMemory()) {
+            return false;
+        }
+        final double direct = (double) image1.getWidth() * image1.getHeight() * templateArea;
+        final double padded = (double) Fft.paddedSize( image1.getWidth() + image2.getWidth() - 1)
+                * Fft.paddedSize( image1.getHeight() + image2.getHeight() - 1);
+        final double transforms = 4 * padded * (Math.log( padded) / Math.log( 2));
+        return direct > 6 * transforms;
+    }
+
+    /**
+     * Returns an upper bound on the bytes computing the correlation surface allocates: four
+     * double buffers of the zero padded size, the summed squares and five ints per main image
+     * pixel for the window ranges.
+     */
+    public static long correlationBytes( final PackedImage image1, final PackedImage image2) {
+        final long padded = (long) Fft.paddedSize( image1.getWidth() + image2.getWidth() - 1)
+                * Fft.paddedSize( image1.getHeight() + image2.getHeight() - 1);
+        final long pixels = (long) image1.getWidth() * image1.getHeight();
+        return 4 * Double.BYTES * padded + 5 * Integer.BYTES * pixels + Long.BYTES * (image1.getWidth() + 1L) * (image1.getHeight() + 1L);
+    }
+
+    /** Returns true if this searcher computes the correlation surface before scanning. */
+    public boolean usesCorrelation() {
+        return this.correlating;
+    }
+
+    /**
+     * Computes the correlation surface on the first run, then searches as RasterSearcher does.
+     * In grayscale mode the matcher does not consult filters, so the surface is not computed.
+     */
+    @Override
+    public void runSearch( final SearchListener listener) throws SearchCancelledException {
+        if ( this.correlating && this.filter == null && !getMatcher().isGrayscale()) {
+            final long startTime = System.currentTimeMillis();
+            final RasterMatcher matcher = getMatcher();
+            try {
+                this.filter = CorrelationFilter.of( matcher.getMainImage(), matcher.getSubImage(), matcher.getThreshold(), this::isCancelled);
+            } catch ( SearchCancelledException e) {
+                listener.information( "Cancelled at " + ((System.currentTimeMillis() - startTime) / 1000.0) + "s\n");
+                throw e;
+            }
+            matcher.addFilter( this.filter);
+            listener.information( "Correlation left " + this.filter.numberOfCandidates() + " candidates in "
+                    + ((System.currentTimeMillis() - startTime) / 1000.0) + "s\n");
+        }
+        super.runSearch( listener);
+    }
+}
@@ -0,0 +1,111 @@
+package adp.image.report4;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.imageio.ImageIO;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * How long decoding image files takes, wherever {@link ImageCache}, {@link RasterCache} or
+ * {@link HaystackPipeline} read one through {@link #read(File)}. Registered with the platform
+ * MBean server when first used.
+ */
+public final class DecodeMetrics implements DecodeMetricsMXBean {
+
+    private static final DecodeMetrics SHARED = register();
+
+    private final LongAdder images = new LongAdder();
+    //Times in nanoseconds
+    private final LongAdder time = new LongAdder();
+    private final LongAccumulator maxTime = new LongAccumulator( Math::max, 0);
+    private final AtomicLong lastTime = new AtomicLong();
+
+    private DecodeMetrics() {
+    }
+
+    /** Returns the metrics every decoder reports to. */
+    public static DecodeMetrics shared() {
+        return SHARED;
+    }
+
+    /**
+     * Decodes the image in the given file with {@link ImageIO#read(File)}, counting the time it
+     * takes and recording it as a {@link SearchEvents.Decode}. Returns null, as ImageIO does,
+     * if the file is not in a readable format.
+     */
+    static BufferedImage read( final File file) throws IOException {
+        final SearchEvents.Decode event = new SearchEvents.Decode();
+        event.begin();
+        final long start = System.nanoTime();
+        final BufferedImage image = ImageIO.read( file);
+        SHARED.decoded( System.nanoTime() - start);
+        event.end();
+        if ( event.shouldCommit()) {
+            event.file = file.getPath();
+            if ( image != null) {
+                event.width = image.getWidth();
+                event.height = image.getHeight();
+            }
+            event.commit();
+        }
+        return image;
+    }
+
+    private static DecodeMetrics register() {
+        final DecodeMetrics metrics = new DecodeMetrics();
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean( metrics, new ObjectName( SearchMetrics.DOMAIN + ":type=DecodeMetrics"));
+        } catch ( JMException | SecurityException e) {
+            // not exported, nothing else depends on it
+        }
+        return metrics;
+    }
+
+    /** Counts an image decoded in the given number of nanoseconds. */
+    public void decoded( final long nanos) {
+        this.images.increment();
+        this.time.add( nanos);
+        this.maxTime.accumulate( nanos);
+        this.lastTime.set( nanos);
+    }
+
+    @Override
+    public long getImagesDecoded() {
+        return this.images.sum();
+    }
+
+    @Override
+    public long getTotalDecodeMillis() {
+        return this.time.sum() / 1000000;
+    }
+
+    @Override
+    public double getMeanDecodeMillis() {
+        final long images = this.images.sum();
+        return images == 0 ? 0 : this.time.sum() / 1e6 / images;
+    }
+
+    @Override
+    public double getMaxDecodeMillis() {
+        return this.maxTime.get() / 1e6;
+    }
+
+    @Override
+    public double getLastDecodeMillis() {
+        return this.lastTime.get() / 1e6;
+    }
+
+    @Override
+    public void reset() {
+        this.images.reset();
+        this.time.reset();
+        this.maxTime.reset();
+        this.lastTime.set( 0);
+    }
+}
@@ -0,0 +1,21 @@
+package adp.image.report4;
+
+/**
+ * The management interface of {@link DecodeMetrics}, exported over JMX as
+ * {@code adp.image:type=DecodeMetrics}.
+ */
+public interface DecodeMetricsMXBean {
+
+    long getImagesDecoded();
+
+    long getTotalDecodeMillis();
+
+    double getMeanDecodeMillis();
+
+    double getMaxDecodeMillis();
+
+    double getLastDecodeMillis();
+
+    /** Sets every counter back to 0. */
+    void reset();
+}
@@ -0,0 +1,16 @@
+package adp.image.report4;
+
+/**
+ * The innermost loop of {@link RasterMatcher}: adds up the colour distances of a run of
+ * consecutive pixel pairs, one template column at a time.
+ *
+ * @see DistanceKernels
+ */
+public interface DistanceKernel {
+
+    /**
+     * Returns {@code difference} plus the Euclidean RGB distances between
+     * {@code pixels1[offset1 + i]} and {@code pixels2[offset2 + i]} for {@code i < length}.
+     */
+    double accumulate( double difference, int[] pixels1, int offset1, int[] pixels2, int offset2, int length);
+}
@@ -0,0 +1,62 @@
+package adp.image.report4;
+
+/**
+ * The available {@link DistanceKernel}s.
+ * <p>
+ * The scalar kernel adds the distances one at a time, in the same order as
+ * {@link adp.image.jar.AbstractSearcher}, so its results are bit for bit identical. The vector
+ * kernel (adp.image.report4.VectorDistanceKernel, kept in src-vector) works on whole SIMD
+ * registers with the {@code jdk.incubator.vector} API. It needs Java 16 or later started with
+ * {@code --add-modules jdk.incubator.vector}, and it differs from the scalar sum by rounding in
+ * the last bits, so a window scoring within rounding error of the threshold can flip.
+ * <p>
+ * The scalar kernel is therefore the default of every {@link RasterMatcher}, and the vector one
+ * is only used when set explicitly. src-vector is compiled by the vector profiles of the
+ * benchmarks and tests modules only. It is not part of the application module, where
+ * {@link #vector()} returns null.
+ */
+public final class DistanceKernels {
+
+    private static final String VECTOR_KERNEL = "adp.image.report4.VectorDistanceKernel";
+
+    private static final DistanceKernel SCALAR = new DistanceKernel() {
+        @Override
+        public double accumulate( double difference, final int[] pixels1, final int offset1, final int[] pixels2, final int offset2, final int length) {
+            for( int i = 0; i < length; i++) {
+                difference += RasterMatcher.distance( pixels1[offset1 + i], pixels2[offset2 + i]);
+            }
+            return difference;
+        }
+
+        @Override
+        public String toString() {
+            return "scalar";
+        }
+    };
+
+    private static final DistanceKernel VECTOR = loadVectorKernel();
+
+    private DistanceKernels() {
+    }
+
+    /** Returns the exact one-pixel-at-a-time kernel, the default of every {@link RasterMatcher}. */
+    public static DistanceKernel scalar() {
+        return SCALAR;
+    }
+
+    /** Returns the SIMD kernel, or null if the vector module or the kernel class is not available. */
+    public static DistanceKernel vector() {
+        return VECTOR;
+    }
+
+    private static DistanceKernel loadVectorKernel() {
+        if ( !ModuleLayer.boot().findModule( "jdk.incubator.vector").isPresent()) {
+            return null;
+        }
+        try {
+            return (DistanceKernel) Class.forName( VECTOR_KERNEL).getDeclaredConstructor().newInstance();
+        } catch ( ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}
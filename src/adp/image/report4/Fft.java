@@ -0,0 +1,101 @@
+package adp.image.report4;
+
+import adp.image.jar.Searcher.SearchCancelledException;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * In-place radix-2 fast Fourier transforms over separate real and imaginary arrays.
+ */
+final class Fft {
+
+    private Fft() {
+    }
+
+    /** Returns the smallest power of two that is at least {@code n}. */
+    static int paddedSize( final int n) {
+        return n <= 1 ? 1 : Integer.highestOneBit( n - 1) << 1;
+    }
+
+    /**
+     * Transforms a {@code width} x {@code height} array stored column by column
+     * ({@code x * height + y}). Both sizes must be powers of two. The inverse is scaled by
+     * {@code 1 / (width * height)}. Throws {@link SearchCancelledException} before the next
+     * column or row once cancelled returns true.
+     */
+    static void transform2d( final double[] re, final double[] im, final int width, final int height, final boolean inverse, final BooleanSupplier cancelled) {
+        for( int x = 0; x < width; x++) {
+            if ( cancelled.getAsBoolean()) {
+                throw new SearchCancelledException();
+            }
+            transform( re, im, x * height, height, inverse);
+        }
+        // rows are strided, so transform them through a contiguous copy
+        final double[] rowRe = new double[width];
+        final double[] rowIm = new double[width];
+        for( int y = 0; y < height; y++) {
+            if ( cancelled.getAsBoolean()) {
+                throw new SearchCancelledException();
+            }
+            for( int x = 0; x < width; x++) {
+                rowRe[x] = re[x * height + y];
+                rowIm[x] = im[x * height + y];
+            }
+            transform( rowRe, rowIm, 0, width, inverse);
+            for( int x = 0; x < width; x++) {
+                re[x * height + y] = rowRe[x];
+                im[x * height + y] = rowIm[x];
+            }
+        }
+        if ( inverse) {
+            final double scale = 1.0 / ((double) width * height);
+            for( int i = 0; i < re.length; i++) {
+                re[i] *= scale;
+                im[i] *= scale;
+            }
+        }
+    }
+
+    //Unscaled transform of the n contiguous elements at offset
+    private static void transform( final double[] re, final double[] im, final int offset, final int n, final boolean inverse) {
+        // bit reversal permutation
+        for( int i = 1, j = 0; i < n; i++) {
+            int bit = n >> 1;
+            for( ; (j & bit) != 0; bit >>= 1) {
+                j ^= bit;
+            }
+            j ^= bit;
+            if ( i < j) {
+                final double tr = re[offset + i];
+                re[offset + i] = re[offset + j];
+                re[offset + j] = tr;
+                final double ti = im[offset + i];
+                im[offset + i] = im[offset + j];
+                im[offset + j] = ti;
+            }
+        }
+        for( int length = 2; length <= n; length <<= 1) {
+            final double angle = (inverse ? 2 : -2) * Math.PI / length;
+            final double stepRe = Math.cos( angle);
+            final double stepIm = Math.sin( angle);
+            final int half = length >> 1;
+            double wRe = 1;
+            double wIm = 0;
+            // twiddle outermost so it is computed once per butterfly column
+            for( int k = 0; k < half; k++) {
+                for( int a = offset + k; a < offset + n; a += length) {
+                    final int b = a + half;
+                    final double tRe = re[b] * wRe - im[b] * wIm;
+                    final double tIm = re[b] * wIm + im[b] * wRe;
+                    re[b] = re[a] - tRe;
+                    im[b] = im[a] - tIm;
+                    re[a] += tRe;
+                    im[a] += tIm;
+                }
+                final double nextRe = wRe * stepRe - wIm * stepIm;
+                wIm = wRe * stepIm + wIm * stepRe;
+                wRe = nextRe;
+            }
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package adp.image.report4;
+
+import adp.image.jar.Searcher;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Searches for one template in many main images, e.g. every image in a directory, with the
+ * work split into three stages that run concurrently: decoding files, unpacking the decoded
+ * images into {@link PackedImage}s and searching them with a {@link RasterSearcher}. The
+ * stages hand images on through bounded queues, so decoding the next files overlaps with
+ * searching the current ones while only a few decoded images are held in memory at a time.
+ * <p>
+ * Results are reported per image to a {@link Listener}, from the searching threads and in the
+ * order the searches finish. A file that fails in any stage, also with an unexpected runtime
+ * exception, is reported as failed and the others go on. An {@link Error} in any stage stops
+ * the whole pipeline and is rethrown by {@link #run(List, Listener)}.
+ * <p>
+ * With a {@link RasterCache} the decoding stage reads images already seen from the cache, and
+ * the unpacking stage adds the others to it after unpacking them.
+ * <p>
+ * With neighbour suppression on, each cluster of adjacent matches is reported as its single
+ * best position, see {@link MatchSuppressor}.
+ */
+public class HaystackPipeline {
+
+    /** Default number of images each queue between two stages can hold. */
+    public static final int DEFAULT_QUEUE_CAPACITY = 4;
+
+    /** Receives the outcome of every image. Must be safe to call from several threads. */
+    public interface Listener {
+
+        /** Called once the image in file has been searched, with the positions that appear to match. */
+        void searched( File file, int[] matches, long searchTime);
+
+        /**
+         * Called when the file could not be read as an image, or could not be unpacked or
+         * searched. Unexpected runtime exceptions arrive as the cause of an IOException.
+         */
+        void failed( File file, IOException e);
+    }
+
+    //What travels between the stages, file == null marks the end of the stream
+    private static final class Item {
+        static final Item END = new Item( null, null, null);
+
+        final File file;
+        final BufferedImage image;
+        final PackedImage packed;
+
+        Item( final File file, final BufferedImage image, final PackedImage packed) {
+            this.file = file;
+            this.image = image;
+            this.packed = packed;
+        }
+    }
+
+    private final PackedImage template;
+    private final int decoders;
+    private final int searchers;
+    private final int queueCapacity;
+    private RasterCache cache;
+    private boolean suppressNeighbours = false;
+
+    private final AtomicInteger searched = new AtomicInteger();
+    private volatile long elapsedTime;
+    private volatile boolean cancelled = false;
+
+    /**
+     * Constructs a pipeline that searches for template with one decoding thread and a
+     * searching thread for every other processor.
+     */
+    public HaystackPipeline( final BufferedImage template) {
+        this( PackedImage.of( template), 1, Math.max( 1, Runtime.getRuntime().availableProcessors() - 1), DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Constructs a pipeline that searches for template with the given number of decoding and
+     * searching threads and queues of the given capacity between the stages.
+     */
+    public HaystackPipeline( final PackedImage template, final int decoders, final int searchers, final int queueCapacity) {
+        if ( decoders < 1 || searchers < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException( "decoders, searchers and queueCapacity must be at least 1");
+        }
+        this.template = template;
+        this.decoders = decoders;
+        this.searchers = searchers;
+        this.queueCapacity = queueCapacity;
+    }
+
+    public RasterCache getCache() {
+        return this.cache;
+    }
+
+    /** Sets the cache decoded images are read from and added to, null to always decode. */
+    public void setCache( final RasterCache cache) {
+        this.cache = cache;
+    }
+
+    public boolean isSuppressNeighbours() {
+        return this.suppressNeighbours;
+    }
+
+    /** Sets whether only the best match of each cluster of adjacent matches is reported. Off by default. */
+    public void setSuppressNeighbours( final boolean suppressNeighbours) {
+        this.suppressNeighbours = suppressNeighbours;
+    }
+
+    /** Returns the files of the given directory in name order, skipping subdirectories. */
+    public static List<File> filesIn( final File directory) throws IOException {
+        final File[] files = directory.listFiles( File::isFile);
+        if ( files == null) {
+            throw new IOException( "Cannot list " + directory);
+        }
+        Arrays.sort( files);
+        return Arrays.asList( files);
+    }
+
+    /** Returns the number of images searched by the last or current run. */
+    public int numberOfImagesSearched() {
+        return this.searched.get();
+    }
+
+    /** Returns the images searched per second by the last run. */
+    public double imagesPerSecond() {
+        return this.elapsedTime == 0 ? 0 : this.searched.get() * 1000.0 / this.elapsedTime;
+    }
+
+    /** Makes a running pipeline stop once the searches in progress have finished. */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    /**
+     * Searches every file and returns once all of them have been reported to the listener,
+     * or the pipeline has been cancelled.
+     *
+     * @throws InterruptedException if the calling thread is interrupted while waiting, which
+     *                              also stops the stages
+     * @throws Error                the first error thrown in any stage, after stopping the others
+     */
+    public void run( final List<File> files, final Listener listener) throws InterruptedException {
+        this.searched.set( 0);
+        this.cancelled = false;
+        final long startTime = System.currentTimeMillis();
+        final BlockingQueue<File> pending = new ArrayBlockingQueue<File>( files.size() + this.decoders);
+        final BlockingQueue<Item> decoded = new ArrayBlockingQueue<Item>( this.queueCapacity);
+        final BlockingQueue<Item> unpacked = new ArrayBlockingQueue<Item>( this.queueCapacity);
+        pending.addAll( files);
+
+        final Thread[] threads = new Thread[this.decoders + 1 + this.searchers];
+        final AtomicInteger decoding = new AtomicInteger( this.decoders);
+        int next = 0;
+        for( int i = 0; i < this.decoders; i++) {
+            threads[next++] = new Thread( () -> decode( pending, decoded, decoding, listener), "decoder-" + i);
+        }
+        threads[next++] = new Thread( () -> unpack( decoded, unpacked, listener), "unpacker");
+        for( int i = 0; i < this.searchers; i++) {
+            threads[next++] = new Thread( () -> search( unpacked, listener), "searcher-" + i);
+        }
+        //A stage that dies would leave the others blocked on its queue, so stop them all
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        for( Thread thread : threads) {
+            thread.setDaemon( true);
+            thread.setUncaughtExceptionHandler( (dead, e) -> {
+                failure.compareAndSet( null, e);
+                for( Thread other : threads) {
+                    other.interrupt();
+                }
+            });
+        }
+        for( Thread thread : threads) {
+            thread.start();
+        }
+        try {
+            for( Thread thread : threads) {
+                thread.join();
+            }
+        } catch ( InterruptedException e) {
+            for( Thread thread : threads) {
+                thread.interrupt();
+            }
+            throw e;
+        } finally {
+            this.elapsedTime = System.currentTimeMillis() - startTime;
+        }
+        final Throwable e = failure.get();
+        if ( e instanceof Error) {
+            throw (Error) e;
+        } else if ( e != null) {
+            throw new IllegalStateException( "A pipeline stage failed", e);
+        }
+    }
+
+    //Stage 1: reads files until there are none left, the last decoder to finish ends the stream
+    private void decode( final BlockingQueue<File> pending, final BlockingQueue<Item> decoded, final AtomicInteger decoding, final Listener listener) {
+        try {
+            final RasterCache cache = this.cache;
+            File file;
+            while( !this.cancelled && (file = pending.poll()) != null) {
+                final Item item;
+                try {
+                    final PackedImage cached = cache != null ? cache.find( file) : null;
+                    if ( cached != null) {
+                        item = new Item( file, null, cached);
+                    } else {
+                        final BufferedImage image = DecodeMetrics.read( file);
+                        if ( image == null) {
+                            throw new IOException( "Not a readable image: " + file);
+                        }
+                        item = new Item( file, image, null);
+                    }
+                } catch ( IOException e) {
+                    listener.failed( file, e);
+                    continue;
+                } catch ( RuntimeException e) {
+                    listener.failed( file, new IOException( "Cannot decode " + file + ": " + e, e));
+                    continue;
+                }
+                decoded.put( item);
+            }
+        } catch ( InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if ( decoding.decrementAndGet() == 0) {
+                end( decoded, 1);
+            }
+        }
+    }
+
+    //Stage 2: unpacks the decoded images and caches them, then ends the stream once for every searcher
+    private void unpack( final BlockingQueue<Item> decoded, final BlockingQueue<Item> unpacked, final Listener listener) {
+        try {
+            final RasterCache cache = this.cache;
+            Item item;
+            while( (item = decoded.take()) != Item.END) {
+                if ( this.cancelled) {
+                    continue;
+                } else if ( item.packed != null) {
+                    unpacked.put( item);
+                    continue;
+                }
+                final PackedImage packed;
+                try {
+                    packed = PackedImage.of( item.image);
+                } catch ( RuntimeException e) {
+                    listener.failed( item.file, new IOException( "Cannot unpack " + item.file + ": " + e, e));
+                    continue;
+                }
+                if ( cache != null) {
+                    try {
+                        cache.store( item.file, packed);
+                    } catch ( IOException | RuntimeException e) {
+                        //The image is still searched, it is only decoded again next time
+                    }
+                }
+                unpacked.put( new Item( item.file, null, packed));
+            }
+        } catch ( InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            end( unpacked, this.searchers);
+        }
+    }
+
+    //Stage 3: searches each unpacked image for the template
+    private void search( final BlockingQueue<Item> unpacked, final Listener listener) {
+        try {
+            Item item;
+            while( (item = unpacked.take()) != Item.END) {
+                if ( this.cancelled) {
+                    continue;
+                }
+                final long startTime = System.currentTimeMillis();
+                final Matches matches = new Matches();
+                try {
+                    final RasterSearcher searcher = new RasterSearcher( new RasterMatcher( item.packed, this.template));
+                    if ( this.suppressNeighbours) {
+                        new MatchSuppressor( matches, searcher.getMatcher()).runSearch( searcher);
+                    } else {
+                        searcher.runSearch( matches);
+                    }
+                } catch ( RuntimeException e) {
+                    listener.failed( item.file, new IOException( "Cannot search " + item.file + ": " + e, e));
+                    continue;
+                }
+                this.searched.incrementAndGet();
+                listener.searched( item.file, Arrays.copyOf( matches.positions, matches.size), System.currentTimeMillis() - startTime);
+            }
+        } catch ( InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    //Puts count end markers, unless the stages are being stopped by an interrupt
+    private static void end( final BlockingQueue<Item> queue, final int count) {
+        try {
+            for( int i = 0; i < count; i++) {
+                queue.put( Item.END);
+            }
+        } catch ( InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    //Collects the matching positions of one search
+    private static final class Matches implements Searcher.SearchListener {
+        int[] positions = new int[8];
+        int size = 0;
+
+        @Override
+        public void information( final String message) {
+        }
+
+        @Override
+        public void possibleMatch( final int position, final long elapsedTime, final long positionsTriedSoFar) {
+            if ( this.size == this.positions.length) {
+                this.positions = Arrays.copyOf( this.positions, this.size * 2);
+            }
+            this.positions[this.size++] = position;
+        }
+
+        @Override
+        public void update( final int position, final long elapsedTime, final long positionsTriedSoFar) {
+        }
+    }
+}
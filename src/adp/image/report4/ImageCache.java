@@ -0,0 +1,218 @@
+package adp.image.report4;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An in-memory cache of decoded images, so switching back to a file opened before costs no
+ * decoding. Each is kept as the BufferedImage the front ends display and, once
+ * {@link #readPacked(File)} has asked for it, also as the {@link PackedImage} the searchers
+ * work on, so it is not unpacked again either. Images only ever read with {@link #read(File)}
+ * take no space for a packed copy.
+ * <p>
+ * Entries are keyed by the absolute path, last modified time and length of the file, so a
+ * file changed on disk is read again. The cache holds at most a given number of bytes of pixel
+ * data and evicts the least recently used entries to stay under it; an image larger than the
+ * whole cache is returned without being kept.
+ * <p>
+ * All methods are thread safe. Two threads missing on the same file at the same time may both
+ * decode it.
+ */
+public final class ImageCache {
+
+    /** Default bound of the cached pixel data, 256 MiB. */
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+    /** The system property giving the bound of {@link #shared()} in bytes. */
+    public static final String MAX_BYTES_PROPERTY = "adp.imageCache.maxBytes";
+
+    private static final ImageCache SHARED = new ImageCache( Long.getLong( MAX_BYTES_PROPERTY, DEFAULT_MAX_BYTES));
+
+    //Identifies one version of one file
+    private static final class Key {
+        final String path;
+        final long lastModified;
+        final long length;
+
+        Key( final File file) {
+            this.path = file.getAbsolutePath();
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+        }
+
+        @Override
+        public boolean equals( final Object o) {
+            if ( !(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return this.path.equals( other.path) && this.lastModified == other.lastModified && this.length == other.length;
+        }
+
+        @Override
+        public int hashCode() {
+            return (this.path.hashCode() * 31 + Long.hashCode( this.lastModified)) * 31 + Long.hashCode( this.length);
+        }
+    }
+
+    //The packed copy and the bytes are guarded by the cache
+    private static final class Entry {
+        final Key key;
+        final BufferedImage image;
+        PackedImage packed;
+        long bytes;
+
+        Entry( final Key key, final BufferedImage image) {
+            this.key = key;
+            this.image = image;
+            this.bytes = bytesOf( image);
+        }
+    }
+
+    private final long maxBytes;
+    //In access order, so the first entry is the least recently used one
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>( 16, 0.75f, true);
+    private long bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /** Constructs a cache holding at most maxBytes of pixel data. */
+    public ImageCache( final long maxBytes) {
+        if ( maxBytes < 0) {
+            throw new IllegalArgumentException( "maxBytes must not be negative: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the cache shared by the front ends and {@link adp.image.Demo}, bounded by the
+     * {@code adp.imageCache.maxBytes} system property or {@link #DEFAULT_MAX_BYTES}.
+     */
+    public static ImageCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns the decoded image in the given file, read from the cache if it holds the current
+     * version of the file.
+     *
+     * @throws IOException if the file cannot be read or is not an image
+     */
+    public BufferedImage read( final File file) throws IOException {
+        return entry( file).image;
+    }
+
+    /**
+     * Returns the unpacked pixels of the image in the given file, read from the cache if it
+     * holds the current version of the file. The image is unpacked on the first call for it,
+     * and the packed copy is kept alongside it from then on.
+     *
+     * @throws IOException if the file cannot be read or is not an image
+     */
+    public PackedImage readPacked( final File file) throws IOException {
+        final Entry entry = entry( file);
+        synchronized( this) {
+            if ( entry.packed != null) {
+                return entry.packed;
+            }
+        }
+        //Unpack without holding the lock, like decoding
+        final PackedImage packed = PackedImage.of( entry.image);
+        synchronized( this) {
+            if ( entry.packed == null) {
+                entry.packed = packed;
+                final long bytes = 4L * packed.getWidth() * packed.getHeight();
+                entry.bytes += bytes;
+                if ( this.entries.get( entry.key) == entry) {
+                    this.bytes += bytes;
+                    evict();
+                }
+            }
+            return entry.packed;
+        }
+    }
+
+    public long getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    /** Returns the number of bytes of pixel data currently held. */
+    public synchronized long sizeInBytes() {
+        return this.bytes;
+    }
+
+    public synchronized int numberOfEntries() {
+        return this.entries.size();
+    }
+
+    public synchronized long numberOfHits() {
+        return this.hits;
+    }
+
+    public synchronized long numberOfMisses() {
+        return this.misses;
+    }
+
+    public synchronized long numberOfEvictions() {
+        return this.evictions;
+    }
+
+    /** Drops every entry. The statistics are kept. */
+    public synchronized void clear() {
+        this.entries.clear();
+        this.bytes = 0;
+    }
+
+    private Entry entry( final File file) throws IOException {
+        final Key key = new Key( file);
+        synchronized( this) {
+            final Entry cached = this.entries.get( key);
+            if ( cached != null) {
+                this.hits++;
+                return cached;
+            }
+            this.misses++;
+        }
+        //Decode without holding the lock, so hits on other files are not kept waiting
+        final BufferedImage image = DecodeMetrics.read( file);
+        if ( image == null) {
+            throw new IOException( "Not a readable image: " + file);
+        }
+        final Entry entry = new Entry( key, image);
+        if ( entry.bytes <= this.maxBytes) {
+            put( key, entry);
+        }
+        return entry;
+    }
+
+    private synchronized void put( final Key key, final Entry entry) {
+        final Entry previous = this.entries.put( key, entry);
+        if ( previous != null) {
+            this.bytes -= previous.bytes;
+        }
+        this.bytes += entry.bytes;
+        evict();
+    }
+
+    //Drops the least recently used entries until the others fit, called holding the lock
+    private void evict() {
+        final Iterator<Map.Entry<Key, Entry>> eldest = this.entries.entrySet().iterator();
+        while( this.bytes > this.maxBytes && eldest.hasNext()) {
+            final Entry evicted = eldest.next().getValue();
+            eldest.remove();
+            this.bytes -= evicted.bytes;
+            this.evictions++;
+        }
+    }
+
+    //The size of the image's pixel storage
+    private static long bytesOf( final BufferedImage image) {
+        final DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize( buffer.getDataType()) / 8;
+    }
+}
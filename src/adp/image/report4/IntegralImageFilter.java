@@ -0,0 +1,103 @@
+package adp.image.report4;
+
+/**
+ * A {@link WindowFilter} that compares the intensity mean and variance of each window with
+ * those of the template in constant time, using summed-area tables of intensity and squared
+ * intensity ({@code r + g + b}).
+ * <p>
+ * The colour distance of two pixels is at least their intensity difference divided by
+ * {@code sqrt(3)}. The average intensity difference over a window is at least the difference
+ * of the means. It is also at least the mean squared difference divided by the largest
+ * possible difference, and the mean squared difference is at least
+ * {@code (mean1 - mean2)^2 + (sd1 - sd2)^2}. A window is rejected when either bound keeps its
+ * average colour distance at or above the threshold, so no match is ever lost.
+ */
+public final class IntegralImageFilter implements WindowFilter {
+
+    private static final double SQRT_3 = Math.sqrt( 3);
+    private static final int MAX_INTENSITY = 3 * 255;
+
+    private final Table table1;
+    private final Table table2;
+    private final int width1;
+    private final int height1;
+    private final int width2;
+    private final int height2;
+    private final double limit;
+
+    private IntegralImageFilter( final PackedImage image1, final PackedImage image2, final double threshold) {
+        this.table1 = new Table( image1);
+        this.table2 = new Table( image2);
+        this.width1 = image1.getWidth();
+        this.height1 = image1.getHeight();
+        this.width2 = image2.getWidth();
+        this.height2 = image2.getHeight();
+        // the smallest lower bound on the average intensity difference that rules a window out
+        this.limit = threshold * SQRT_3 * (1 + 1e-9);
+    }
+
+    /** Builds the summed-area tables of both images for the given matching threshold. */
+    public static IntegralImageFilter of( final PackedImage image1, final PackedImage image2, final double threshold) {
+        return new IntegralImageFilter( image1, image2, threshold);
+    }
+
+    @Override
+    public boolean mayMatch( final int x1, final int y1) {
+        final int columns = Math.min( this.width2, this.width1 - x1);
+        final int rows = Math.min( this.height2, this.height1 - y1);
+        final double count = (double) columns * rows;
+
+        final double mean1 = this.table1.sum( x1, y1, columns, rows) / count;
+        final double mean2 = this.table2.sum( 0, 0, columns, rows) / count;
+        final double meanDifference = Math.abs( mean1 - mean2);
+        if ( meanDifference >= this.limit) {
+            return false;
+        }
+        final double sd1 = Math.sqrt( Math.max( 0, this.table1.squareSum( x1, y1, columns, rows) / count - mean1 * mean1));
+        final double sd2 = Math.sqrt( Math.max( 0, this.table2.squareSum( 0, 0, columns, rows) / count - mean2 * mean2));
+        final double sdDifference = sd1 - sd2;
+        final double meanSquare = meanDifference * meanDifference + sdDifference * sdDifference;
+        return meanSquare / MAX_INTENSITY < this.limit;
+    }
+
+    /** Summed-area tables of intensity and squared intensity, (width + 1) x (height + 1) column by column. */
+    private static final class Table {
+        private final int stride;
+        private final long[] sums;
+        private final long[] squareSums;
+
+        Table( final PackedImage image) {
+            final int width = image.getWidth();
+            final int height = image.getHeight();
+            this.stride = height + 1;
+            this.sums = new long[(width + 1) * this.stride];
+            this.squareSums = new long[(width + 1) * this.stride];
+            for( int x = 0; x < width; x++) {
+                long column = 0;
+                long squareColumn = 0;
+                for( int y = 0; y < height; y++) {
+                    final int rgb = image.rgb( x, y);
+                    final long intensity = ((rgb >> 16) & 0xFF) + ((rgb >> 8) & 0xFF) + (rgb & 0xFF);
+                    column += intensity;
+                    squareColumn += intensity * intensity;
+                    final int i = (x + 1) * this.stride + y + 1;
+                    this.sums[i] = this.sums[i - this.stride] + column;
+                    this.squareSums[i] = this.squareSums[i - this.stride] + squareColumn;
+                }
+            }
+        }
+
+        double sum( final int x, final int y, final int columns, final int rows) {
+            return rectangle( this.sums, x, y, columns, rows);
+        }
+
+        double squareSum( final int x, final int y, final int columns, final int rows) {
+            return rectangle( this.squareSums, x, y, columns, rows);
+        }
+
+        private long rectangle( final long[] table, final int x, final int y, final int columns, final int rows) {
+            return table[(x + columns) * this.stride + y + rows] - table[x * this.stride + y + rows]
+                    - table[(x + columns) * this.stride + y] + table[x * this.stride + y];
+        }
+    }
+}
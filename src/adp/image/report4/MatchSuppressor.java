@@ -0,0 +1,205 @@
+package adp.image.report4;
+
+import adp.image.jar.Searcher;
+import adp.image.jar.Searcher.SearchListener;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A SearchListener that reduces each cluster of neighbouring matches to the single best one
+ * (non-maximum suppression). A real occurrence of the template usually matches at a whole
+ * group of adjacent positions; only the one with the lowest average colour distance is passed
+ * on, along with its score.
+ * <p>
+ * Matches are held back until {@link #flush()} is called, because a better match may still
+ * follow; {@link #runSearch(Searcher)} runs a search and flushes once it has ended. They can
+ * arrive from any number of threads. A kept match suppresses every other match less than a
+ * template width to the left or right and a template height above or below it. The kept
+ * matches are passed on in position order, with the elapsed time and position count from when
+ * each was found.
+ * <p>
+ * Searchers that score their matches anyway, like {@link RasterSearcher} and
+ * {@link TopKSearcher}, report the score along with the match. Matches reported without one
+ * are scored on the calling thread with the searcher's matcher.
+ */
+public final class MatchSuppressor implements ScoredSearchListener {
+
+    private final SearchListener listener;
+    private final RasterMatcher matcher;
+    private final int radiusX;
+    private final int radiusY;
+
+    private int[] positions = new int[16];
+    private double[] scores = new double[16];
+    private long[] elapsedTimes = new long[16];
+    private long[] positionsTried = new long[16];
+    private int size = 0;
+
+    /**
+     * Constructs a suppressor for the matches found with the given matcher, which has to be the
+     * one the searcher uses, passing the kept ones on to listener.
+     */
+    public MatchSuppressor( final SearchListener listener, final RasterMatcher matcher) {
+        this( listener, matcher, matcher.getSubImage().getWidth(), matcher.getSubImage().getHeight());
+    }
+
+    /**
+     * Constructs a suppressor where a kept match suppresses the matches less than radiusX
+     * columns and radiusY rows away.
+     */
+    public MatchSuppressor( final SearchListener listener, final RasterMatcher matcher, final int radiusX, final int radiusY) {
+        if ( radiusX < 1 || radiusY < 1) {
+            throw new IllegalArgumentException( "The radius must be at least 1x1: " + radiusX + "x" + radiusY);
+        }
+        this.listener = listener;
+        this.matcher = matcher;
+        this.radiusX = radiusX;
+        this.radiusY = radiusY;
+    }
+
+    /**
+     * Runs the search with this suppressor as its listener and passes the kept matches on once
+     * it has ended, also when it was cancelled or failed.
+     */
+    public void runSearch( final Searcher searcher) throws Searcher.SearchCancelledException {
+        try {
+            searcher.runSearch( this);
+        } finally {
+            flush();
+        }
+    }
+
+    @Override
+    public void information( final String message) {
+        this.listener.information( message);
+    }
+
+    /** Scores the match with the matcher on the calling thread and holds it back. */
+    @Override
+    public void possibleMatch( final int position, final long elapsedTime, final long positionsTriedSoFar) {
+        possibleMatch( position, this.matcher.score( position % width(), position / width()), elapsedTime, positionsTriedSoFar);
+    }
+
+    /** Holds the match back until {@link #flush()}. */
+    @Override
+    public void possibleMatch( final int position, final double score, final long elapsedTime, final long positionsTriedSoFar) {
+        synchronized( this) {
+            if ( this.size == this.positions.length) {
+                final int capacity = this.size * 2;
+                this.positions = Arrays.copyOf( this.positions, capacity);
+                this.scores = Arrays.copyOf( this.scores, capacity);
+                this.elapsedTimes = Arrays.copyOf( this.elapsedTimes, capacity);
+                this.positionsTried = Arrays.copyOf( this.positionsTried, capacity);
+            }
+            this.positions[this.size] = position;
+            this.scores[this.size] = score;
+            this.elapsedTimes[this.size] = elapsedTime;
+            this.positionsTried[this.size] = positionsTriedSoFar;
+            this.size++;
+        }
+    }
+
+    @Override
+    public void update( final int position, final long elapsedTime, final long positionsTriedSoFar) {
+        this.listener.update( position, elapsedTime, positionsTriedSoFar);
+    }
+
+    /** Returns the number of matches held back so far. */
+    public synchronized int numberOfCandidates() {
+        return this.size;
+    }
+
+    /** Passes the kept matches held back so far on to the listener and forgets all of them. */
+    public void flush() {
+        final int[] kept;
+        final int[] positions;
+        final double[] scores;
+        final long[] elapsedTimes;
+        final long[] positionsTried;
+        synchronized( this) {
+            kept = suppress();
+            positions = this.positions;
+            scores = this.scores;
+            elapsedTimes = this.elapsedTimes;
+            positionsTried = this.positionsTried;
+            this.positions = new int[16];
+            this.scores = new double[16];
+            this.elapsedTimes = new long[16];
+            this.positionsTried = new long[16];
+            this.size = 0;
+        }
+        //Pass them on in position order, with each index in the low half of its sort key
+        final long[] order = new long[kept.length];
+        for( int i = 0; i < kept.length; i++) {
+            order[i] = ((long) positions[kept[i]] << 32) | kept[i];
+        }
+        Arrays.sort( order);
+        final ScoredSearchListener scored = this.listener instanceof ScoredSearchListener ? (ScoredSearchListener) this.listener : null;
+        for( long key : order) {
+            final int index = (int) key;
+            if ( scored != null) {
+                scored.possibleMatch( positions[index], scores[index], elapsedTimes[index], positionsTried[index]);
+            } else {
+                this.listener.possibleMatch( positions[index], elapsedTimes[index], positionsTried[index]);
+            }
+        }
+    }
+
+    //Greedily keeps the best remaining match and drops its neighbours, returns the kept indices
+    private int[] suppress() {
+        final Integer[] byScore = new Integer[this.size];
+        for( int i = 0; i < this.size; i++) {
+            byScore[i] = i;
+        }
+        Arrays.sort( byScore, ( a, b) -> Double.compare( this.scores[a], this.scores[b]));
+
+        //Kept matches bucketed by radius sized cells, so only the 3x3 cells around one are checked
+        final Map<Long, int[]> cells = new HashMap<Long, int[]>();
+        final int[] kept = new int[this.size];
+        int keptSize = 0;
+        for( Integer index : byScore) {
+            final int x = this.positions[index] % width();
+            final int y = this.positions[index] / width();
+            final int cellX = x / this.radiusX;
+            final int cellY = y / this.radiusY;
+            boolean suppressed = false;
+            for( int cx = cellX - 1; cx <= cellX + 1 && !suppressed; cx++) {
+                for( int cy = cellY - 1; cy <= cellY + 1 && !suppressed; cy++) {
+                    final int[] cell = cells.get( cell( cx, cy));
+                    if ( cell == null) {
+                        continue;
+                    }
+                    for( int k = 1; k <= cell[0]; k++) {
+                        final int other = this.positions[cell[k]];
+                        if ( Math.abs( other % width() - x) < this.radiusX && Math.abs( other / width() - y) < this.radiusY) {
+                            suppressed = true;
+                            break;
+                        }
+                    }
+                }
+            }
+            if ( !suppressed) {
+                kept[keptSize++] = index;
+                int[] cell = cells.get( cell( cellX, cellY));
+                if ( cell == null) {
+                    cell = new int[4];
+                } else if ( cell[0] == cell.length - 1) {
+                    cell = Arrays.copyOf( cell, cell.length * 2);
+                }
+                cell[++cell[0]] = index;
+                cells.put( cell( cellX, cellY), cell);
+            }
+        }
+        return Arrays.copyOf( kept, keptSize);
+    }
+
+    private int width() {
+        return this.matcher.getMainImage().getWidth();
+    }
+
+    private static Long cell( final int cellX, final int cellY) {
+        return ((long) cellX << 32) ^ (cellY & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,182 @@
+package adp.image.report4;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+
+/**
+ * An immutable copy of the pixels of a BufferedImage, unpacked once into packed RGB ints.
+ * <p>
+ * Pixels are stored column by column ({@code x * height + y}), which is the order
+ * {@link adp.image.jar.AbstractSearcher} walks a window in, so scanning a window
+ * reads both arrays sequentially.
+ */
+public final class PackedImage {
+
+    private final int width;
+    private final int height;
+    private final int[] pixels;
+    //Made on first use by luma()
+    private volatile byte[] luma;
+
+    private PackedImage( final int width, final int height, final int[] pixels) {
+        this.width = width;
+        this.height = height;
+        this.pixels = pixels;
+    }
+
+    /**
+     * Unpacks the given image. Common raster layouts are read straight from their DataBuffer,
+     * anything else goes through a single bulk {@link BufferedImage#getRGB(int, int, int, int, int[], int, int)}.
+     * Recorded as a {@link SearchEvents.Unpack}.
+     */
+    public static PackedImage of( final BufferedImage image) {
+        final SearchEvents.Unpack event = new SearchEvents.Unpack();
+        event.begin();
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int[] rows = unpackRows( image);
+        final int[] columns = new int[width * height];
+        for( int y = 0; y < height; y++) {
+            final int rowStart = y * width;
+            for( int x = 0; x < width; x++) {
+                columns[x * height + y] = rows[rowStart + x];
+            }
+        }
+        event.end();
+        if ( event.shouldCommit()) {
+            event.width = width;
+            event.height = height;
+            event.bytes = 4L * columns.length;
+            event.commit();
+        }
+        return new PackedImage( width, height, columns);
+    }
+
+    /** Wraps an already column-major pixel array, which is not copied. */
+    static PackedImage wrap( final int width, final int height, final int[] pixels) {
+        if ( pixels.length != width * height) {
+            throw new IllegalArgumentException( "Expected " + width * height + " pixels but got " + pixels.length);
+        }
+        return new PackedImage( width, height, pixels);
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    /** Returns the pixel at (x, y) as 0xRRGGBB, the alpha byte is not defined. */
+    public int rgb( final int x, final int y) {
+        return this.pixels[x * this.height + y];
+    }
+
+    /**
+     * Returns a copy at half the width and height, each pixel being the rounded channel average
+     * of a 2x2 block. An odd last row or column is dropped.
+     */
+    public PackedImage halve() {
+        final int width = this.width / 2;
+        final int height = this.height / 2;
+        final int[] halved = new int[width * height];
+        for( int x = 0; x < width; x++) {
+            final int left = 2 * x * this.height;
+            final int right = left + this.height;
+            for( int y = 0; y < height; y++) {
+                final int top = 2 * y;
+                halved[x * height + y] = average( this.pixels[left + top], this.pixels[left + top + 1],
+                        this.pixels[right + top], this.pixels[right + top + 1]);
+            }
+        }
+        return new PackedImage( width, height, halved);
+    }
+
+    /** The column-major pixel array itself, shared rather than copied for the matching kernels. */
+    int[] pixels() {
+        return this.pixels;
+    }
+
+    /**
+     * The column-major luminance plane, one unsigned byte per pixel. It is made on first use and
+     * then shared, like {@link #pixels()}, by every matcher in grayscale mode.
+     */
+    byte[] luma() {
+        byte[] luma = this.luma;
+        if ( luma == null) {
+            luma = new byte[this.pixels.length];
+            for( int i = 0; i < luma.length; i++) {
+                luma[i] = (byte) luminance( this.pixels[i]);
+            }
+            this.luma = luma;
+        }
+        return luma;
+    }
+
+    /** Returns the luminance of 0xRRGGBB from 0 to 255, with the BT.601 weights in 8 bit fixed point. */
+    static int luminance( final int rgb) {
+        return (77 * ((rgb >> 16) & 0xFF) + 150 * ((rgb >> 8) & 0xFF) + 29 * (rgb & 0xFF) + 128) >> 8;
+    }
+
+    private static int average( final int a, final int b, final int c, final int d) {
+        final int red = (((a >> 16) & 0xFF) + ((b >> 16) & 0xFF) + ((c >> 16) & 0xFF) + ((d >> 16) & 0xFF) + 2) >> 2;
+        final int green = (((a >> 8) & 0xFF) + ((b >> 8) & 0xFF) + ((c >> 8) & 0xFF) + ((d >> 8) & 0xFF) + 2) >> 2;
+        final int blue = ((a & 0xFF) + (b & 0xFF) + (c & 0xFF) + (d & 0xFF) + 2) >> 2;
+        return (red << 16) | (green << 8) | blue;
+    }
+
+    //Reads the image row by row into 0xRRGGBB ints
+    private static int[] unpackRows( final BufferedImage image) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final Raster raster = image.getRaster();
+        final SampleModel model = raster.getSampleModel();
+        final DataBuffer buffer = raster.getDataBuffer();
+        final int tx = raster.getSampleModelTranslateX();
+        final int ty = raster.getSampleModelTranslateY();
+        final int[] rows = new int[width * height];
+
+        switch( image.getType()) {
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_ARGB: {
+                final int[] data = ((DataBufferInt) buffer).getData();
+                final SinglePixelPackedSampleModel packed = (SinglePixelPackedSampleModel) model;
+                for( int y = 0; y < height; y++) {
+                    int i = buffer.getOffset() + packed.getOffset( -tx, y - ty);
+                    for( int x = 0; x < width; x++) {
+                        rows[y * width + x] = data[i++];
+                    }
+                }
+                return rows;
+            }
+            case BufferedImage.TYPE_3BYTE_BGR:
+            case BufferedImage.TYPE_4BYTE_ABGR: {
+                final byte[] data = ((DataBufferByte) buffer).getData();
+                final ComponentSampleModel component = (ComponentSampleModel) model;
+                final int pixelStride = component.getPixelStride();
+                final int scanlineStride = component.getScanlineStride();
+                final int[] bandOffsets = component.getBandOffsets();
+                final int r = bandOffsets[0];
+                final int g = bandOffsets[1];
+                final int b = bandOffsets[2];
+                for( int y = 0; y < height; y++) {
+                    int i = buffer.getOffset() + (y - ty) * scanlineStride - tx * pixelStride;
+                    for( int x = 0; x < width; x++) {
+                        rows[y * width + x] = ((data[i + r] & 0xFF) << 16) | ((data[i + g] & 0xFF) << 8) | (data[i + b] & 0xFF);
+                        i += pixelStride;
+                    }
+                }
+                return rows;
+            }
+            default:
+                return image.getRGB( 0, 0, width, height, rows, 0, width);
+        }
+    }
+}
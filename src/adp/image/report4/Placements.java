@@ -0,0 +1,83 @@
+package adp.image.report4;
+
+/**
+ * The positions of a main image at which a template is tried: with its top left corner at
+ * (x, y) for every x up to {@link #lastX()} and y up to {@link #lastY()}, so that at least a
+ * given number of template columns and rows overlap the image. Positions are numbered
+ * {@code y * width + x} over the whole width of the image, as everywhere else, so the valid
+ * ones are not contiguous unless every column is valid.
+ * <p>
+ * By default a placement needs the whole template to fit, which leaves
+ * {@code (W - w + 1) * (H - h + 1)} positions. A minimum overlap of 1x1 brings back every
+ * position of the image, with the windows running off the right and bottom edges truncated
+ * as {@link adp.image.jar.BasicSearcher} does.
+ */
+public final class Placements {
+
+    private final int width;
+    private final int lastX;
+    private final int lastY;
+
+    private Placements( final int width, final int height, final int minColumns, final int minRows) {
+        this.width = width;
+        this.lastX = width - minColumns;
+        this.lastY = height - minRows;
+    }
+
+    /** Returns the placements of the whole template in the main image. */
+    public static Placements of( final PackedImage image1, final PackedImage image2) {
+        return of( image1.getWidth(), image1.getHeight(), image2.getWidth(), image2.getHeight(), image2.getWidth(), image2.getHeight());
+    }
+
+    /**
+     * Returns the placements of a template of width2 by height2 pixels overlapping a main
+     * image of width1 by height1 pixels by at least minColumns columns and minRows rows.
+     */
+    public static Placements of( final int width1, final int height1, final int width2, final int height2, final int minColumns, final int minRows) {
+        if ( minColumns < 1 || minColumns > width2 || minRows < 1 || minRows > height2) {
+            throw new IllegalArgumentException( "The minimum overlap must be between 1x1 and the template size "
+                    + width2 + "x" + height2 + ": " + minColumns + "x" + minRows);
+        }
+        return new Placements( width1, height1, minColumns, minRows);
+    }
+
+    /** Returns the largest valid x, negative if there is none. */
+    public int lastX() {
+        return this.lastX;
+    }
+
+    /** Returns the largest valid y, negative if there is none. */
+    public int lastY() {
+        return this.lastY;
+    }
+
+    public boolean contains( final int x, final int y) {
+        return x >= 0 && x <= this.lastX && y >= 0 && y <= this.lastY;
+    }
+
+    /** Returns the number of valid positions. */
+    public long size() {
+        return (long) Math.max( 0, this.lastX + 1) * Math.max( 0, this.lastY + 1);
+    }
+
+    /** Returns the number of valid positions from first (inclusive) to end (exclusive). */
+    public long count( final long first, final long end) {
+        return countBefore( end) - countBefore( first);
+    }
+
+    /** Returns one past the last position of the last valid row, 0 if there is none. */
+    public long end() {
+        return this.lastX < 0 || this.lastY < 0 ? 0 : (long) (this.lastY + 1) * this.width;
+    }
+
+    private long countBefore( final long position) {
+        if ( this.lastX < 0 || this.lastY < 0) {
+            return 0;
+        }
+        final long row = position / this.width;
+        if ( row > this.lastY) {
+            return size();
+        }
+        return row * (this.lastX + 1) + Math.min( position % this.width, this.lastX + 1);
+    }
+}
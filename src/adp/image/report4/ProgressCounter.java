@@ -0,0 +1,43 @@
+package adp.image.report4;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the positions a search has tried, for any number of worker threads. The count is kept
+ * in a {@link LongAdder}, whose cells are padded against false sharing, so workers adding to it
+ * at the same time do not contend. Workers are expected to count positions in a local variable
+ * and {@link #add(int)} them in batches, so the inner loop writes no shared memory at all.
+ */
+public final class ProgressCounter {
+
+    /** How many positions a worker tries between two calls to {@link #add(int)}. */
+    public static final int BATCH = 1000;
+
+    private final LongAdder tried = new LongAdder();
+    private volatile long startTime = System.currentTimeMillis();
+
+    /** Sets the count back to 0 and the start of the search to now. */
+    public void start() {
+        this.tried.reset();
+        this.startTime = System.currentTimeMillis();
+    }
+
+    public void add( final int positions) {
+        this.tried.add( positions);
+    }
+
+    /** Returns the positions added so far. Exact once the workers have added their last batch. */
+    public long positionsTried() {
+        return this.tried.sum();
+    }
+
+    /** Returns the milliseconds since {@link #start()}. */
+    public long elapsedTime() {
+        return System.currentTimeMillis() - this.startTime;
+    }
+
+    /** Returns the progress of a search of the given number of positions. */
+    public SearchProgress snapshot( final long positionsToTry) {
+        return new SearchProgress( positionsTried(), positionsToTry, elapsedTime());
+    }
+}
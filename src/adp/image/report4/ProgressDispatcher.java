@@ -0,0 +1,145 @@
+package adp.image.report4;
+
+import adp.image.jar.Searcher.SearchListener;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A SearchListener that coalesces the progress updates of a search before passing them on.
+ * Calls to {@link #update(int, long, long)}, from however many worker threads, only record
+ * the latest progress; a single dispatcher thread shared by all instances hands the most
+ * recent progress to the wrapped listener at a fixed rate, by default 10 times a second. The
+ * cost of the wrapped listener therefore no longer grows with the speed of the search. The
+ * progress passed on is always that of one update call, the one with the most positions
+ * tried, so its position and counts belong together.
+ * <p>
+ * Matches and information are passed on at once from the calling thread. Information is
+ * preceded by any progress still pending, so a "Finished" message always follows the final
+ * update; that last update is passed on from the thread calling
+ * {@link #information(String)}. The wrapped listener never gets two updates at the same
+ * time, and never an older one after a newer one. The dispatcher stops polling once updates
+ * stop coming in.
+ * <p>
+ * Progress only ever moves forward, so use a new dispatcher for every search.
+ */
+public final class ProgressDispatcher implements SearchListener {
+
+    /** Default time between two updates passed on, 100ms. */
+    public static final long DEFAULT_PERIOD_MILLIS = 100;
+
+    private static final ScheduledExecutorService DISPATCHER = dispatcher();
+
+    private final SearchListener listener;
+    private final long periodMillis;
+
+    //The latest progress, guarded by its own lock so recording it never waits for the listener
+    private final Object progress = new Object();
+    private int position;
+    private long elapsedTime;
+    private long positionsTried = -1;
+    //Guarded by this, which is held while an update is passed on
+    private long published = -1;
+    private volatile ScheduledFuture<?> task;
+
+    /** Constructs a dispatcher passing updates on to listener 10 times a second. */
+    public ProgressDispatcher( final SearchListener listener) {
+        this( listener, DEFAULT_PERIOD_MILLIS);
+    }
+
+    /** Constructs a dispatcher passing updates on to listener every periodMillis. */
+    public ProgressDispatcher( final SearchListener listener, final long periodMillis) {
+        if ( periodMillis < 1) {
+            throw new IllegalArgumentException( "periodMillis must be at least 1: " + periodMillis);
+        }
+        this.listener = listener;
+        this.periodMillis = periodMillis;
+    }
+
+    /** Passes any pending update on from the calling thread, then the message. */
+    @Override
+    public void information( final String message) {
+        publish();
+        this.listener.information( message);
+    }
+
+    @Override
+    public void possibleMatch( final int position, final long elapsedTime, final long positionsTriedSoFar) {
+        this.listener.possibleMatch( position, elapsedTime, positionsTriedSoFar);
+    }
+
+    /**
+     * Records the progress, to be passed on by the dispatcher thread, unless an update with
+     * more positions tried has been recorded already.
+     */
+    @Override
+    public void update( final int position, final long elapsedTime, final long positionsTriedSoFar) {
+        synchronized( this.progress) {
+            if ( positionsTriedSoFar > this.positionsTried) {
+                this.position = position;
+                this.elapsedTime = elapsedTime;
+                this.positionsTried = positionsTriedSoFar;
+            }
+        }
+        if ( this.task == null) {
+            schedule();
+        }
+    }
+
+    //Passes the latest progress on if it has not been already, returns false if there was none
+    private synchronized boolean publish() {
+        final int position;
+        final long elapsedTime;
+        final long positionsTried;
+        synchronized( this.progress) {
+            position = this.position;
+            elapsedTime = this.elapsedTime;
+            positionsTried = this.positionsTried;
+        }
+        if ( positionsTried == this.published) {
+            return false;
+        }
+        this.published = positionsTried;
+        this.listener.update( position, elapsedTime, positionsTried);
+        return true;
+    }
+
+    private long positionsTried() {
+        synchronized( this.progress) {
+            return this.positionsTried;
+        }
+    }
+
+    private synchronized void schedule() {
+        if ( this.task == null) {
+            this.task = DISPATCHER.scheduleAtFixedRate( this::tick, this.periodMillis, this.periodMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    //Runs on the dispatcher thread, stops polling after a period without updates
+    private void tick() {
+        if ( publish()) {
+            return;
+        }
+        synchronized( this) {
+            this.task.cancel( false);
+            this.task = null;
+            //An update may have arrived after publish() but before task was cleared
+            if ( positionsTried() != this.published) {
+                schedule();
+            }
+        }
+    }
+
+    private static ScheduledExecutorService dispatcher() {
+        final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor( 1, runnable -> {
+            final Thread thread = new Thread( runnable, "progress-dispatcher");
+            thread.setDaemon( true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy( true);
+        return executor;
+    }
+}
@@ -0,0 +1,219 @@
+package adp.image.report4;
+
+import adp.image.jar.Searcher;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A coarse-to-fine Searcher. Both images are repeatedly halved into a pyramid, every position
+ * is scored only at the coarsest level, and just the neighbourhoods of positions that pass
+ * there are scored again at each finer level. The final decision is made at full resolution
+ * with the usual threshold, so every reported position is one {@link RasterSearcher} would
+ * report too.
+ * <p>
+ * Coarse levels use a relaxed threshold to allow for the detail lost by halving. A match whose
+ * coarse score exceeds it is missed, so this trades a little recall for doing a small fraction
+ * of the work. Templates too small to halve are searched exhaustively.
+ * <p>
+ * {@link #numberOfPositionsTriedSoFar()} counts the windows scored on all levels.
+ */
+public class PyramidSearcher implements Searcher, SearchProgress.Source {
+
+    /** Default number of halvings applied at most. */
+    public static final int DEFAULT_MAX_LEVELS = 4;
+    /** Default factor by which the threshold is relaxed on the coarse levels. */
+    public static final double DEFAULT_COARSE_FACTOR = 2;
+    /** The smallest width or height the template is halved down to. */
+    public static final int MIN_TEMPLATE_SIZE = 4;
+
+    private final List<RasterMatcher> levels = new ArrayList<RasterMatcher>();
+
+    private final ProgressCounter counter = new ProgressCounter();
+    private final SearchMetrics metrics = SearchMetrics.of( getClass());
+    private volatile boolean cancelled = false;
+
+    /**
+     * Constructs a PyramidSearcher that will attempt to find image2 somewhere in image1.
+     */
+    public PyramidSearcher( final BufferedImage image1, final BufferedImage image2) {
+        this( PackedImage.of( image1), PackedImage.of( image2), DEFAULT_MAX_LEVELS, DEFAULT_COARSE_FACTOR);
+    }
+
+    /**
+     * Constructs a PyramidSearcher with at most {@code maxLevels} halvings whose coarse levels
+     * accept windows scoring below {@code coarseFactor} times the full resolution threshold.
+     */
+    public PyramidSearcher( final PackedImage image1, final PackedImage image2, final int maxLevels, final double coarseFactor) {
+        PackedImage main = image1;
+        PackedImage sub = image2;
+        this.levels.add( new RasterMatcher( main, sub));
+        while( this.levels.size() <= maxLevels
+                && sub.getWidth() / 2 >= MIN_TEMPLATE_SIZE && sub.getHeight() / 2 >= MIN_TEMPLATE_SIZE) {
+            main = main.halve();
+            sub = sub.halve();
+            final RasterMatcher coarse = new RasterMatcher( main, sub, RasterMatcher.DEFAULT_THRESHOLD * coarseFactor);
+            //Every coarse position, so the candidates near the edges cover all valid fine ones
+            coarse.setMinimumOverlap( 1, 1);
+            this.levels.add( coarse);
+        }
+    }
+
+    /**
+     * Sets the minimum overlap of the template at full resolution, see
+     * {@link RasterMatcher#setMinimumOverlap(int, int)}.
+     */
+    public void setMinimumOverlap( final int columns, final int rows) {
+        this.levels.get( 0).setMinimumOverlap( columns, rows);
+    }
+
+    /** Returns the number of halved levels above full resolution. */
+    public int numberOfCoarseLevels() {
+        return this.levels.size() - 1;
+    }
+
+    /** Returns the number of full resolution positions covered by the search. */
+    @Override
+    public int numberOfPositionsToTry() {
+        return (int) this.levels.get( 0).getPlacements().size();
+    }
+
+    @Override
+    public int numberOfPositionsTriedSoFar() {
+        return (int) this.counter.positionsTried();
+    }
+
+    /** Returns the windows scored on all levels against the full resolution positions. */
+    @Override
+    public SearchProgress progress() {
+        return this.counter.snapshot( numberOfPositionsToTry());
+    }
+
+    /** Resets the searcher to re-run its search, also after it has been cancelled. */
+    @Override
+    public void reset() {
+        restart();
+        this.cancelled = false;
+    }
+
+    //Resets what a run starts from, but keeps a cancel that came before the run
+    private void restart() {
+        for( RasterMatcher level : this.levels) {
+            level.resetStatistics();
+        }
+        this.counter.start();
+    }
+
+    /**
+     * Makes a running search throw {@link Searcher.SearchCancelledException} before it scores
+     * its next window. A search not started yet throws as soon as it starts, until
+     * {@link #reset()} is called.
+     */
+    @Override
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    /**
+     * Scores the coarsest level exhaustively, refines the survivors level by level and reports
+     * the full resolution matches in position order. The SearchListener methods are invoked
+     * on the thread that calls this method.
+     */
+    @Override
+    public void runSearch( final SearchListener listener) throws SearchCancelledException {
+        this.restart();
+        listener.information( "SEARCHING...");
+        final long startTime = System.currentTimeMillis();
+        final SearchMetrics.Run run = this.metrics.start( numberOfPositionsToTry());
+        try {
+            int level = this.levels.size() - 1;
+            final RasterMatcher coarsest = this.levels.get( level);
+            BitSet candidates = new BitSet( coarsest.numberOfPositions());
+            candidates.set( 0, coarsest.numberOfPositions());
+            candidates = score( coarsest, candidates, listener, startTime);
+
+            while( level > 0) {
+                level--;
+                candidates = score( this.levels.get( level), refine( candidates, this.levels.get( level + 1), this.levels.get( level)), listener, startTime);
+            }
+
+            for( int position = candidates.nextSetBit( 0); position >= 0; position = candidates.nextSetBit( position + 1)) {
+                run.match( position);
+                listener.possibleMatch( position, System.currentTimeMillis() - startTime, numberOfPositionsTriedSoFar());
+            }
+        } catch ( SearchCancelledException e) {
+            run.cancelled();
+            throw e;
+        } finally {
+            run.end( numberOfPositionsTriedSoFar(), numberOfPruned(), numberOfAbandoned());
+        }
+        listener.information("Finished at " + ((System.currentTimeMillis() - startTime) / 1000.0) + "s\n");
+    }
+
+    private long numberOfPruned() {
+        long pruned = 0;
+        for( RasterMatcher level : this.levels) {
+            pruned += level.numberOfPruned();
+        }
+        return pruned;
+    }
+
+    private long numberOfAbandoned() {
+        long abandoned = 0;
+        for( RasterMatcher level : this.levels) {
+            abandoned += level.numberOfAbandoned();
+        }
+        return abandoned;
+    }
+
+    //Returns the subset of the candidate positions that match on the given level
+    private BitSet score( final RasterMatcher matcher, final BitSet candidates, final SearchListener listener, final long startTime) {
+        final BitSet matches = new BitSet( matcher.numberOfPositions());
+        final Placements placements = matcher.getPlacements();
+        final int width = matcher.getMainImage().getWidth();
+        int pending = 0;
+        for( int position = candidates.nextSetBit( 0); position >= 0; position = candidates.nextSetBit( position + 1)) {
+            if ( this.cancelled) {
+                this.counter.add( pending);
+                listener.information( "Cancelled at " + ((System.currentTimeMillis() - startTime) / 1000.0) + "s\n");
+                throw new SearchCancelledException();
+            }
+            final int x = position % width;
+            final int y = position / width;
+            if ( !placements.contains( x, y)) {
+                continue;
+            }
+            if ( matcher.matches( x, y)) {
+                matches.set( position);
+            }
+            pending++;
+            if ( pending == ProgressCounter.BATCH) {
+                this.counter.add( pending);
+                pending = 0;
+                listener.update( position, System.currentTimeMillis() - startTime, numberOfPositionsTriedSoFar());
+            }
+        }
+        this.counter.add( pending);
+        return matches;
+    }
+
+    //Maps every coarse position to the finer positions within one pixel of where it lands
+    private static BitSet refine( final BitSet coarse, final RasterMatcher coarseLevel, final RasterMatcher fineLevel) {
+        final int coarseWidth = coarseLevel.getMainImage().getWidth();
+        final int fineWidth = fineLevel.getMainImage().getWidth();
+        final int fineHeight = fineLevel.getMainImage().getHeight();
+        final BitSet fine = new BitSet( fineLevel.numberOfPositions());
+        for( int position = coarse.nextSetBit( 0); position >= 0; position = coarse.nextSetBit( position + 1)) {
+            final int x = 2 * (position % coarseWidth);
+            final int y = 2 * (position / coarseWidth);
+            final int left = Math.max( 0, x - 1);
+            final int right = Math.min( fineWidth, x + 3);
+            for( int fy = Math.max( 0, y - 1); fy < Math.min( fineHeight, y + 3); fy++) {
+                fine.set( fy * fineWidth + left, fy * fineWidth + right);
+            }
+        }
+        return fine;
+    }
+}
@@ -0,0 +1,288 @@
+package adp.image.report4;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An on-disk cache of decoded images, so that an image file is only decoded the first time
+ * it is searched. Each entry holds the {@link PackedImage} of one file, named after the
+ * SHA-256 of the file's path, size and modification time, so the file is not read at all on a
+ * hit and an edited file gets a new entry.
+ * <p>
+ * Entries take 4 bytes per pixel, far more than the compressed files, so the cache is bounded:
+ * once its entries add up to more than the maximum size, the least recently used ones are
+ * deleted. A hit marks an entry as used by updating its modification time.
+ * <p>
+ * An entry is a 16 byte header, the magic number, format version, width and height, followed
+ * by the column-major pixels, all as little-endian ints. Entries are read by memory-mapping
+ * them and copying the pixels into the PackedImage in one bulk transfer, without any
+ * decoding. Entries are written to a temporary file and moved into place, so concurrent
+ * loads of the same file never see a partial entry.
+ */
+public final class RasterCache {
+
+    /** "ADPR", the first int of every entry. */
+    public static final int MAGIC = 0x41445052;
+    /** The entry format written by this class. */
+    public static final int VERSION = 1;
+    /** The system property naming the directory of {@link #inDefaultDirectory()}. */
+    public static final String DIRECTORY_PROPERTY = "adp.rasterCache";
+    /** The system property giving the maximum size in bytes of {@link #inDefaultDirectory()}. */
+    public static final String MAX_BYTES_PROPERTY = "adp.rasterCache.maxBytes";
+    /** Default maximum size of the entries together, 1 GiB. */
+    public static final long DEFAULT_MAX_BYTES = 1L << 30;
+
+    private static final int HEADER_SIZE = 16;
+    private static final String SUFFIX = ".raster";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Constructs a cache keeping its entries in the given directory, created when needed, with
+     * the default maximum size.
+     */
+    public RasterCache( final File directory) {
+        this( directory, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Constructs a cache keeping its entries in the given directory, evicting the least
+     * recently used ones once they take more than maxBytes together.
+     */
+    public RasterCache( final File directory, final long maxBytes) {
+        if ( maxBytes < 0) {
+            throw new IllegalArgumentException( "maxBytes must not be negative: " + maxBytes);
+        }
+        this.directory = directory.toPath();
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns a cache in the directory given by the {@code adp.rasterCache} system property,
+     * or in adp-raster-cache under the temporary directory, bounded by the
+     * {@code adp.rasterCache.maxBytes} system property or {@link #DEFAULT_MAX_BYTES}.
+     */
+    public static RasterCache inDefaultDirectory() {
+        final String configured = System.getProperty( DIRECTORY_PROPERTY);
+        return new RasterCache( configured != null ? new File( configured) : new File( System.getProperty( "java.io.tmpdir"), "adp-raster-cache"),
+                Long.getLong( MAX_BYTES_PROPERTY, DEFAULT_MAX_BYTES));
+    }
+
+    public long getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    /** Returns the number of loads served from an existing entry. */
+    public long numberOfHits() {
+        return this.hits.get();
+    }
+
+    /** Returns the number of loads that had to decode the file. */
+    public long numberOfMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * Returns the pixels of the given image file, read from its entry if there is one and
+     * otherwise decoded and added to the cache. An unreadable entry is replaced.
+     *
+     * @throws IOException if the file cannot be read or is not an image
+     */
+    public PackedImage load( final File file) throws IOException {
+        final PackedImage cached = find( file);
+        if ( cached != null) {
+            return cached;
+        }
+        final BufferedImage decoded = DecodeMetrics.read( file);
+        if ( decoded == null) {
+            throw new IOException( "Not a readable image: " + file);
+        }
+        final PackedImage image = PackedImage.of( decoded);
+        store( file, image);
+        return image;
+    }
+
+    /**
+     * Returns the pixels of the given image file from its entry, or null if there is no
+     * readable entry, in which case the caller is expected to {@link #store(File, PackedImage)}
+     * them once decoded.
+     *
+     * @throws IOException if the file cannot be read
+     */
+    public PackedImage find( final File file) throws IOException {
+        final Path entry = entry( file);
+        if ( Files.isRegularFile( entry)) {
+            try {
+                final PackedImage image = read( entry);
+                touch( entry);
+                this.hits.incrementAndGet();
+                return image;
+            } catch ( IOException e) {
+                //Count a miss, the entry is rewritten by store
+            }
+        }
+        this.misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Adds the pixels decoded from the given image file, replacing any entry it already has.
+     *
+     * @throws IOException if the file or the entry cannot be written
+     */
+    public void store( final File file, final PackedImage image) throws IOException {
+        final long size = HEADER_SIZE + 4L * image.getWidth() * image.getHeight();
+        if ( size > this.maxBytes) {
+            return;
+        }
+        write( entry( file), image);
+        evict();
+    }
+
+    /** Returns the bytes taken by the entries together. */
+    public long size() throws IOException {
+        long size = 0;
+        for( Path entry : entries()) {
+            size += Files.size( entry);
+        }
+        return size;
+    }
+
+    private Path entry( final File file) throws IOException {
+        final Path path = file.toPath().toAbsolutePath().normalize();
+        return this.directory.resolve( hash( path + "|" + Files.size( path) + "|" + Files.getLastModifiedTime( path).toMillis()) + SUFFIX);
+    }
+
+    //Marks the entry as used, it may have been evicted by another thread in the meantime
+    private static void touch( final Path entry) {
+        try {
+            Files.setLastModifiedTime( entry, FileTime.fromMillis( System.currentTimeMillis()));
+        } catch ( IOException e) {
+            //Only the eviction order suffers
+        }
+    }
+
+    //Deletes the least recently used entries until the others fit into maxBytes
+    private synchronized void evict() throws IOException {
+        final List<Path> entries = entries();
+        final Map<Path, FileTime> used = new HashMap<Path, FileTime>();
+        long size = 0;
+        for( Path entry : entries) {
+            try {
+                used.put( entry, Files.getLastModifiedTime( entry));
+                size += Files.size( entry);
+            } catch ( NoSuchFileException e) {
+                used.put( entry, FileTime.fromMillis( 0));
+            }
+        }
+        entries.sort( Comparator.comparing( used::get));
+        for( Iterator<Path> oldest = entries.iterator(); size > this.maxBytes && oldest.hasNext(); ) {
+            final Path entry = oldest.next();
+            try {
+                final long entrySize = Files.size( entry);
+                Files.delete( entry);
+                size -= entrySize;
+            } catch ( NoSuchFileException e) {
+                //Already gone
+            } catch ( IOException e) {
+                //Still mapped on a platform that cannot delete it, try the next one
+            }
+        }
+    }
+
+    private List<Path> entries() throws IOException {
+        final List<Path> entries = new ArrayList<Path>();
+        if ( !Files.isDirectory( this.directory)) {
+            return entries;
+        }
+        try( DirectoryStream<Path> stream = Files.newDirectoryStream( this.directory, "*" + SUFFIX)) {
+            for( Path entry : stream) {
+                entries.add( entry);
+            }
+        }
+        return entries;
+    }
+
+    private static PackedImage read( final Path entry) throws IOException {
+        try( FileChannel channel = FileChannel.open( entry, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if ( size < HEADER_SIZE) {
+                throw new IOException( "Truncated cache entry " + entry);
+            }
+            final MappedByteBuffer mapped = channel.map( FileChannel.MapMode.READ_ONLY, 0, size);
+            mapped.order( ByteOrder.LITTLE_ENDIAN);
+            if ( mapped.getInt( 0) != MAGIC || mapped.getInt( 4) != VERSION) {
+                throw new IOException( "Not a version " + VERSION + " cache entry " + entry);
+            }
+            final int width = mapped.getInt( 8);
+            final int height = mapped.getInt( 12);
+            if ( width < 0 || height < 0 || size != HEADER_SIZE + 4L * width * height) {
+                throw new IOException( "Corrupt cache entry " + entry);
+            }
+            final int[] pixels = new int[width * height];
+            mapped.position( HEADER_SIZE);
+            mapped.asIntBuffer().get( pixels);
+            return PackedImage.wrap( width, height, pixels);
+        }
+    }
+
+    private void write( final Path entry, final PackedImage image) throws IOException {
+        Files.createDirectories( this.directory);
+        final int[] pixels = image.pixels();
+        final ByteBuffer buffer = ByteBuffer.allocate( HEADER_SIZE + 4 * pixels.length).order( ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt( MAGIC).putInt( VERSION).putInt( image.getWidth()).putInt( image.getHeight());
+        buffer.asIntBuffer().put( pixels);
+        buffer.rewind();
+        final Path temporary = Files.createTempFile( this.directory, "entry", ".tmp");
+        try {
+            try( FileChannel channel = FileChannel.open( temporary, StandardOpenOption.WRITE)) {
+                while( buffer.hasRemaining()) {
+                    channel.write( buffer);
+                }
+            }
+            Files.move( temporary, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists( temporary);
+        }
+    }
+
+    //The hex SHA-256 of the key
+    private static String hash( final String key) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance( "SHA-256");
+        } catch ( NoSuchAlgorithmException e) {
+            throw new IllegalStateException( "Every Java platform supports SHA-256", e);
+        }
+        final StringBuilder hex = new StringBuilder( 64);
+        for( byte b : digest.digest( key.getBytes( StandardCharsets.UTF_8))) {
+            hex.append( Character.forDigit( (b >> 4) & 0xF, 16)).append( Character.forDigit( b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,347 @@
+package adp.image.report4;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Allocation-free matching kernel over two {@link PackedImage}s.
+ * <p>
+ * Scores a window exactly like {@link adp.image.jar.AbstractSearcher#tryPosition()}: the
+ * Euclidean RGB distance of every overlapping pixel pair is summed column by column and the
+ * position matches when the average is below the threshold.
+ * <p>
+ * Each template column is added up by a {@link DistanceKernel}, by default the scalar one,
+ * which keeps the summation order, so that its results are identical, not just close. The
+ * SIMD kernel has to be set explicitly; it can differ for windows whose average is within
+ * rounding error of the threshold.
+ * <p>
+ * {@link WindowFilter}s added to the matcher run in turn in front of the RGB comparison, and
+ * the windows they reject are counted.
+ * <p>
+ * The searchers only try the positions in {@link #getPlacements()}, by default those where the
+ * whole template fits into the main image.
+ * <p>
+ * In grayscale mode, see {@link #setGrayscale(boolean)}, both images are compared as planes of
+ * 8 bit luminance instead, with integer absolute differences.
+ */
+public final class RasterMatcher {
+
+    /** The average colour distance a window has to stay below to count as a match. */
+    public static final double DEFAULT_THRESHOLD = 10; // was 5
+
+    //A difference d in all three channels is d * sqrt(3) apart in RGB but only d in luminance
+    private static final double GRAY_TO_RGB = Math.sqrt( 3);
+
+    private final PackedImage image1;
+    private final PackedImage image2;
+    private final double threshold;
+    private boolean earlyAbandon = true;
+    private DistanceKernel kernel = DistanceKernels.scalar();
+    private WindowFilter[] filters = new WindowFilter[0];
+    private LongAdder[] pruned = new LongAdder[0];
+    private final LongAdder abandoned = new LongAdder();
+    private Placements placements;
+    //The luminance planes, set only in grayscale mode
+    private byte[] luma1;
+    private byte[] luma2;
+
+    public RasterMatcher( final PackedImage image1, final PackedImage image2) {
+        this( image1, image2, DEFAULT_THRESHOLD);
+    }
+
+    public RasterMatcher( final PackedImage image1, final PackedImage image2, final double threshold) {
+        this.image1 = image1;
+        this.image2 = image2;
+        this.threshold = threshold;
+        this.placements = Placements.of( image1, image2);
+    }
+
+    public PackedImage getMainImage() {
+        return this.image1;
+    }
+
+    public PackedImage getSubImage() {
+        return this.image2;
+    }
+
+    public double getThreshold() {
+        return this.threshold;
+    }
+
+    public boolean isEarlyAbandon() {
+        return this.earlyAbandon;
+    }
+
+    /**
+     * Sets whether {@link #matches(int, int)} may stop scoring a window as soon as the
+     * partial difference can no longer get under the threshold. The distances are never
+     * negative, so this does not change which positions match. On by default.
+     */
+    public void setEarlyAbandon( final boolean earlyAbandon) {
+        this.earlyAbandon = earlyAbandon;
+    }
+
+    /** Returns the positions a search with this matcher tries. */
+    public Placements getPlacements() {
+        return this.placements;
+    }
+
+    /**
+     * Sets how many columns and rows of the template at least have to overlap the main image
+     * for a position to be tried. By default the whole template has to fit; 1x1 tries every
+     * position of the main image, scoring the windows running off the right and bottom edges
+     * over the pixels they overlap. Must not be changed while a search is using this matcher.
+     */
+    public void setMinimumOverlap( final int columns, final int rows) {
+        this.placements = Placements.of( this.image1.getWidth(), this.image1.getHeight(),
+                this.image2.getWidth(), this.image2.getHeight(), columns, rows);
+    }
+
+    public boolean isGrayscale() {
+        return this.luma1 != null;
+    }
+
+    /**
+     * Sets whether windows are compared by luminance alone, for templates that are effectively
+     * monochrome. Both images are converted once into planes of one byte per pixel, a quarter
+     * of the memory the RGB comparison reads, and a window is scored with integer absolute
+     * differences, without any floating point per pixel.
+     * <p>
+     * The mean absolute luminance difference is multiplied by the square root of 3, which makes
+     * it equal to the RGB distance when the difference is the same in all three channels. The
+     * threshold and the scores from {@link #score(int, int)} therefore mean the same in both
+     * modes. Differences in hue at the same luminance are not seen at all, so a window can match
+     * on luminance that is far off in RGB. The filters bound the RGB distance and would reject
+     * such a window, so they are not consulted in this mode. Off by default; must not be changed
+     * while a search is using this matcher.
+     */
+    public void setGrayscale( final boolean grayscale) {
+        this.luma1 = grayscale ? this.image1.luma() : null;
+        this.luma2 = grayscale ? this.image2.luma() : null;
+    }
+
+    public DistanceKernel getKernel() {
+        return this.kernel;
+    }
+
+    /**
+     * Sets the kernel that adds up the distances of each template column, by default
+     * {@link DistanceKernels#scalar()}.
+     */
+    public void setKernel( final DistanceKernel kernel) {
+        this.kernel = kernel;
+    }
+
+    /**
+     * Adds a filter to run before the full comparison, after the filters added before it. The
+     * filters are skipped in grayscale mode. Must not be called while a search is using this
+     * matcher.
+     */
+    public void addFilter( final WindowFilter filter) {
+        this.filters = Arrays.copyOf( this.filters, this.filters.length + 1);
+        this.filters[this.filters.length - 1] = filter;
+        this.pruned = Arrays.copyOf( this.pruned, this.pruned.length + 1);
+        this.pruned[this.pruned.length - 1] = new LongAdder();
+    }
+
+    /** Returns true if any filters have been added. */
+    public boolean hasFilters() {
+        return this.filters.length > 0;
+    }
+
+    /** Returns the number of windows rejected by all filters so far. */
+    public long numberOfPruned() {
+        long total = 0;
+        for( LongAdder count : this.pruned) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    /** Returns the number of windows rejected by the given filter so far, 0 if it was never added. */
+    public long numberOfPruned( final WindowFilter filter) {
+        for( int i = 0; i < this.filters.length; i++) {
+            if ( this.filters[i] == filter) {
+                return this.pruned[i].sum();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the number of windows {@link #matches(int, int)} has stopped scoring before their
+     * last column so far, because they could no longer match.
+     */
+    public long numberOfAbandoned() {
+        return this.abandoned.sum();
+    }
+
+    /** Resets the counts of windows rejected by the filters and of abandoned windows. */
+    public void resetStatistics() {
+        for( LongAdder count : this.pruned) {
+            count.reset();
+        }
+        this.abandoned.reset();
+    }
+
+    /** Returns the number of positions in the main image, i.e. one past the largest position. */
+    public int numberOfPositions() {
+        return this.image1.getWidth() * this.image1.getHeight();
+    }
+
+    /** Returns true if image2 matches image1 at the given position ({@code y * width + x}). */
+    public boolean matches( final int position) {
+        final int width = this.image1.getWidth();
+        return matches( position % width, position / width);
+    }
+
+    /** Returns true if image2 matches image1 with its top left corner at (x1, y1). */
+    public boolean matches( final int x1, final int y1) {
+        return !Double.isNaN( matchScore( x1, y1));
+    }
+
+    /**
+     * Returns the same as {@link #score(int, int)} if image2 matches image1 with its top left
+     * corner at (x1, y1), and NaN otherwise. A match is scored completely anyway, so this
+     * costs no more than {@link #matches(int, int)}.
+     */
+    public double matchScore( final int x1, final int y1) {
+        if ( this.luma1 != null) {
+            final int count = Math.min( this.image2.getWidth(), this.image1.getWidth() - x1)
+                    * Math.min( this.image2.getHeight(), this.image1.getHeight() - y1);
+            //An integer sum is under threshold * count exactly when it is under its ceiling
+            final long limit = (long) Math.ceil( this.threshold / GRAY_TO_RGB * count);
+            final long sum = graySum( x1, y1, this.earlyAbandon ? limit : Long.MAX_VALUE, this.abandoned);
+            return sum < limit ? sum * GRAY_TO_RGB / count : Double.NaN;
+        }
+        //The filters bound the RGB distance, so they only run in front of the RGB comparison
+        final WindowFilter[] filters = this.filters;
+        for( int i = 0; i < filters.length; i++) {
+            if ( !filters[i].mayMatch( x1, y1)) {
+                this.pruned[i].increment();
+                return Double.NaN;
+            }
+        }
+        if ( !this.earlyAbandon) {
+            final double score = score( x1, y1);
+            return score < this.threshold ? score : Double.NaN;
+        }
+        final DistanceKernel kernel = this.kernel;
+        final int[] pixels1 = this.image1.pixels();
+        final int[] pixels2 = this.image2.pixels();
+        final int height1 = this.image1.getHeight();
+        final int height2 = this.image2.getHeight();
+        final int columns = Math.min( this.image2.getWidth(), this.image1.getWidth() - x1);
+        final int rows = Math.min( height2, height1 - y1);
+        final int count = columns * rows;
+        double difference = 0;
+
+        for( int x2 = 0; x2 < columns; x2++) {
+            difference = kernel.accumulate( difference, pixels1, (x1 + x2) * height1 + y1, pixels2, x2 * height2, rows);
+            // the sum only grows from here, so this column already decides a miss
+            if ( difference / count >= this.threshold) {
+                if ( x2 < columns - 1) {
+                    this.abandoned.increment();
+                }
+                return Double.NaN;
+            }
+        }
+        return difference / count < this.threshold ? difference / count : Double.NaN;
+    }
+
+    /**
+     * Returns the average colour distance between image2 and the part of image1 it overlaps
+     * when placed at (x1, y1). Windows running off the right or bottom edge are truncated.
+     */
+    public double score( final int x1, final int y1) {
+        if ( this.luma1 != null) {
+            return graySum( x1, y1, Long.MAX_VALUE, null) * GRAY_TO_RGB / windowSize( x1, y1);
+        }
+        final DistanceKernel kernel = this.kernel;
+        final int[] pixels1 = this.image1.pixels();
+        final int[] pixels2 = this.image2.pixels();
+        final int height1 = this.image1.getHeight();
+        final int height2 = this.image2.getHeight();
+        final int columns = Math.min( this.image2.getWidth(), this.image1.getWidth() - x1);
+        final int rows = Math.min( height2, height1 - y1);
+        double difference = 0;
+
+        for( int x2 = 0; x2 < columns; x2++) {
+            difference = kernel.accumulate( difference, pixels1, (x1 + x2) * height1 + y1, pixels2, x2 * height2, rows);
+        }
+        return difference / (columns * rows);
+    }
+
+    /**
+     * Returns the same as {@link #score(int, int)}, unless the score would be above bound, in
+     * which case scoring may stop early and return any value above bound. Filters are not
+     * consulted.
+     */
+    public double score( final int x1, final int y1, final double bound) {
+        if ( this.luma1 != null) {
+            final int count = windowSize( x1, y1);
+            //The smallest integer sum whose score is above bound
+            final double above = Math.floor( bound / GRAY_TO_RGB * count) + 1;
+            return graySum( x1, y1, above >= Long.MAX_VALUE ? Long.MAX_VALUE : (long) above, null) * GRAY_TO_RGB / count;
+        }
+        final DistanceKernel kernel = this.kernel;
+        final int[] pixels1 = this.image1.pixels();
+        final int[] pixels2 = this.image2.pixels();
+        final int height1 = this.image1.getHeight();
+        final int height2 = this.image2.getHeight();
+        final int columns = Math.min( this.image2.getWidth(), this.image1.getWidth() - x1);
+        final int rows = Math.min( height2, height1 - y1);
+        final int count = columns * rows;
+        double difference = 0;
+
+        for( int x2 = 0; x2 < columns; x2++) {
+            difference = kernel.accumulate( difference, pixels1, (x1 + x2) * height1 + y1, pixels2, x2 * height2, rows);
+            if ( difference / count > bound) {
+                return difference / count;
+            }
+        }
+        return difference / count;
+    }
+
+    private int windowSize( final int x1, final int y1) {
+        return Math.min( this.image2.getWidth(), this.image1.getWidth() - x1)
+                * Math.min( this.image2.getHeight(), this.image1.getHeight() - y1);
+    }
+
+    //Adds up the absolute luminance differences column by column, stopping once the sum reaches limit,
+    //and counts a stop before the last column in abandoned unless that is null
+    private long graySum( final int x1, final int y1, final long limit, final LongAdder abandoned) {
+        final byte[] luma1 = this.luma1;
+        final byte[] luma2 = this.luma2;
+        final int height1 = this.image1.getHeight();
+        final int height2 = this.image2.getHeight();
+        final int columns = Math.min( this.image2.getWidth(), this.image1.getWidth() - x1);
+        final int rows = Math.min( height2, height1 - y1);
+        long sum = 0;
+
+        for( int x2 = 0; x2 < columns; x2++) {
+            final int start1 = (x1 + x2) * height1 + y1;
+            final int start2 = x2 * height2;
+            int column = 0;
+            for( int y2 = 0; y2 < rows; y2++) {
+                column += Math.abs( (luma1[start1 + y2] & 0xFF) - (luma2[start2 + y2] & 0xFF));
+            }
+            sum += column;
+            if ( sum >= limit) {
+                if ( abandoned != null && x2 < columns - 1) {
+                    abandoned.increment();
+                }
+                break;
+            }
+        }
+        return sum;
+    }
+
+    //calculate the distance of the color (RGB) of 2 pixels without unpacking them into Colors
+    static double distance( final int rgb1, final int rgb2) {
+        final int dRed = ((rgb1 >> 16) & 0xFF) - ((rgb2 >> 16) & 0xFF);
+        final int dGreen = ((rgb1 >> 8) & 0xFF) - ((rgb2 >> 8) & 0xFF);
+        final int dBlue = (rgb1 & 0xFF) - (rgb2 & 0xFF);
+        return Math.sqrt( (dRed * dRed) + (dGreen * dGreen) + (dBlue * dBlue));
+    }
+}
@@ -0,0 +1,182 @@
+package adp.image.report4;
+
+import adp.image.jar.Searcher;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * A Searcher that unpacks both images once into {@link PackedImage}s and scores every
+ * position with a {@link RasterMatcher}, so the search loop neither calls
+ * {@link BufferedImage#getRGB(int, int)} nor allocates. Only the positions in the matcher's
+ * {@link RasterMatcher#getPlacements()} are tried, by default those where the whole template
+ * fits. With a minimum overlap of 1x1 and the scalar kernel it reports the same matches as
+ * {@link adp.image.jar.BasicSearcher}, plus the last position, which BasicSearcher never tries.
+ * <p>
+ * A {@link ScoredSearchListener} is also told the score of each match, which
+ * the matcher has computed anyway.
+ */
+public class RasterSearcher implements Searcher, SearchProgress.Source {
+
+    private final RasterMatcher matcher;
+    private final int firstPosition;
+    private final int endPosition;
+
+    private final ProgressCounter counter = new ProgressCounter();
+    private final SearchMetrics metrics = SearchMetrics.of( getClass());
+    //Only touched by the searching thread
+    private int currentPosition;
+    private double matchScore;
+    private volatile boolean cancelled = false;
+
+    /**
+     * Constructs a RasterSearcher that will attempt to find image2 somewhere in image1.
+     */
+    public RasterSearcher( final BufferedImage image1, final BufferedImage image2) {
+        this( new RasterMatcher( PackedImage.of( image1), PackedImage.of( image2)));
+    }
+
+    /**
+     * Constructs a RasterSearcher that will attempt to find image2 somewhere in image1
+     * using an already configured matcher.
+     */
+    public RasterSearcher( final RasterMatcher matcher) {
+        this( matcher, 0, matcher.numberOfPositions());
+    }
+
+    /**
+     * Constructs a RasterSearcher that will attempt a match at every valid position between
+     * {@code firstPosition} (inclusive) and {@code endPosition} (exclusive).
+     */
+    public RasterSearcher( final RasterMatcher matcher, final int firstPosition, final int endPosition) {
+        this.matcher = matcher;
+        this.firstPosition = firstPosition;
+        this.endPosition = endPosition;
+        this.currentPosition = firstPosition;
+    }
+
+    /** Returns the matcher this searcher scores positions with. */
+    public RasterMatcher getMatcher() {
+        return this.matcher;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public final int numberOfPositionsToTry() {
+        return (int) this.matcher.getPlacements().count( this.firstPosition, this.endPosition);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public final int numberOfPositionsTriedSoFar() {
+        return (int) this.counter.positionsTried();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public SearchProgress progress() {
+        return this.counter.snapshot( numberOfPositionsToTry());
+    }
+
+    /** Resets the searcher to re-run its search, also after it has been cancelled. */
+    @Override
+    public void reset() {
+        restart();
+        this.cancelled = false;
+    }
+
+    //Resets what a run starts from, but keeps a cancel that came before the run
+    private void restart() {
+        this.matcher.resetStatistics();
+        this.counter.start();
+        this.currentPosition = this.firstPosition;
+    }
+
+    /**
+     * Makes a running search throw {@link Searcher.SearchCancelledException} before it tries
+     * its next position. A search not started yet throws as soon as it starts, until
+     * {@link #reset()} is called.
+     */
+    @Override
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    /** Returns true once {@link #cancel()} has been called, until {@link #reset()}. */
+    protected final boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    /**
+     * Attempts all positions specified for this Searcher in turn, emitting information about
+     * any position that appears to produce a match to the provided {@link Searcher.SearchListener} object.
+     * The SearchListener methods are invoked on the thread that calls this method.
+     */
+    @Override
+    public void runSearch( final SearchListener listener) throws SearchCancelledException {
+        this.restart();
+        listener.information( "SEARCHING...");
+        final long startTime = System.currentTimeMillis();
+        final SearchMetrics.Run run = this.metrics.start( numberOfPositionsToTry());
+        final ScoredSearchListener scored = listener instanceof ScoredSearchListener ? (ScoredSearchListener) listener : null;
+        try {
+            while( true) {
+                final int foundMatch = this.findMatch( listener, startTime);
+                if ( foundMatch >= 0) {
+                    run.match( foundMatch);
+                    if ( scored != null) {
+                        scored.possibleMatch( foundMatch, this.matchScore, System.currentTimeMillis() - startTime, numberOfPositionsTriedSoFar());
+                    } else {
+                        listener.possibleMatch( foundMatch, System.currentTimeMillis() - startTime, numberOfPositionsTriedSoFar());
+                    }
+                } else {
+                    break;
+                }
+            }
+        } catch ( SearchCancelledException e) {
+            run.cancelled();
+            throw e;
+        } finally {
+            run.end( numberOfPositionsTriedSoFar(), this.matcher.numberOfPruned(), this.matcher.numberOfAbandoned());
+        }
+        if ( this.matcher.hasFilters()) {
+            listener.information( this.matcher.numberOfPruned() + " of " + numberOfPositionsTriedSoFar() + " positions pruned by filters\n");
+        }
+        listener.information("Finished at " + ((System.currentTimeMillis() - startTime) / 1000.0) + "s\n");
+    }
+
+    //Counts the positions tried locally and adds them to the counter in batches and before returning,
+    //leaves the score of a match in matchScore
+    private int findMatch( final SearchListener listener, final long startTime) {
+        final Placements placements = this.matcher.getPlacements();
+        final int width = this.matcher.getMainImage().getWidth();
+        final int end = (int) Math.min( this.endPosition, placements.end());
+        int pending = 0;
+        while( this.currentPosition < end) {
+            if ( this.cancelled) {
+                this.counter.add( pending);
+                listener.information( "Cancelled at " + ((System.currentTimeMillis() - startTime) / 1000.0) + "s\n");
+                throw new SearchCancelledException();
+            }
+            final int x = this.currentPosition % width;
+            if ( x > placements.lastX()) {
+                //The template does not fit anywhere in the rest of the row
+                this.currentPosition += width - x;
+                continue;
+            }
+            final double score = this.matcher.matchScore( x, this.currentPosition / width);
+            this.currentPosition++;
+            pending++;
+            if ( !Double.isNaN( score)) {
+                this.matchScore = score;
+                this.counter.add( pending);
+                return this.currentPosition - 1;
+            } else if ( pending == ProgressCounter.BATCH) {
+                this.counter.add( pending);
+                pending = 0;
+                listener.update( this.currentPosition - 1, System.currentTimeMillis() - startTime, numberOfPositionsTriedSoFar());
+            }
+        }
+        this.counter.add( pending);
+        return -1;
+    }
+}
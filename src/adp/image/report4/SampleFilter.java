@@ -0,0 +1,177 @@
+package adp.image.report4;
+
+import java.util.Arrays;
+
+/**
+ * A {@link WindowFilter} that compares a small, fixed sample of template pixels before the
+ * whole window is scored, so a clear miss is rejected after a few dozen pixels instead of all
+ * of them.
+ * <p>
+ * The sample is chosen once from the template: a 4x4 grid of cells, then 8x8, then 16x16,
+ * taking from each cell its pixel with the highest luminance contrast to its neighbours. Each
+ * grid is one stage. After every stage the window is rejected when the summed distance of the
+ * pixels sampled so far alone already reaches the threshold over the whole window. Distances
+ * are never negative, so this never rejects a match.
+ * <p>
+ * A filter built with a margin, see {@link #of(PackedImage, PackedImage, double, double)}, also
+ * rejects the window when the average distance over the sampled pixels is at least margin
+ * times the threshold. That rejects far more misses, but is approximate: it can reject a match
+ * whose differences happen to fall on the sampled pixels, so it has to be asked for. A larger
+ * margin loses fewer matches and rejects fewer misses. Windows let through are still scored
+ * with the exact metric, so every match reported is a real one.
+ * <p>
+ * A template of 16x16 pixels or fewer is sampled whole, and the filter then only repeats the
+ * full comparison.
+ */
+public final class SampleFilter implements WindowFilter {
+
+    private static final int[] GRIDS = { 4, 8, 16};
+
+    private final int[] pixels1;
+    private final int width1;
+    private final int height1;
+    private final int width2;
+    private final int height2;
+    private final double threshold;
+    //The sampled average that rejects a window, infinite unless approximate
+    private final double limit;
+
+    //The sampled template pixels in the order they are compared
+    private final int[] xs;
+    private final int[] ys;
+    private final int[] offsets;
+    private final int[] rgbs;
+    //The number of samples compared by the end of each stage
+    private final int[] stageEnds;
+
+    private SampleFilter( final PackedImage image1, final PackedImage image2, final double threshold, final double margin) {
+        if ( !(margin >= 1)) {
+            throw new IllegalArgumentException( "The margin must be at least 1: " + margin);
+        }
+        this.pixels1 = image1.pixels();
+        this.width1 = image1.getWidth();
+        this.height1 = image1.getHeight();
+        this.width2 = image2.getWidth();
+        this.height2 = image2.getHeight();
+        this.threshold = threshold;
+        this.limit = threshold * margin;
+
+        final int[] contrast = contrast( image2);
+        final boolean[] chosen = new boolean[contrast.length];
+        int[] samples = new int[64];
+        final int[] ends = new int[GRIDS.length];
+        int size = 0;
+        int stages = 0;
+        for( int grid : GRIDS) {
+            final int cellsX = Math.min( grid, this.width2);
+            final int cellsY = Math.min( grid, this.height2);
+            for( int cx = 0; cx < cellsX; cx++) {
+                for( int cy = 0; cy < cellsY; cy++) {
+                    final int best = highest( contrast, chosen, this.height2, cx * this.width2 / cellsX, (cx + 1) * this.width2 / cellsX,
+                            cy * this.height2 / cellsY, (cy + 1) * this.height2 / cellsY);
+                    if ( best >= 0) {
+                        chosen[best] = true;
+                        if ( size == samples.length) {
+                            samples = Arrays.copyOf( samples, size * 2);
+                        }
+                        samples[size++] = best;
+                    }
+                }
+            }
+            if ( stages == 0 || size > ends[stages - 1]) {
+                ends[stages++] = size;
+            }
+        }
+        this.stageEnds = Arrays.copyOf( ends, stages);
+        this.xs = new int[size];
+        this.ys = new int[size];
+        this.offsets = new int[size];
+        this.rgbs = new int[size];
+        for( int i = 0; i < size; i++) {
+            this.xs[i] = samples[i] / this.height2;
+            this.ys[i] = samples[i] % this.height2;
+            this.offsets[i] = this.xs[i] * this.height1 + this.ys[i];
+            this.rgbs[i] = image2.pixels()[samples[i]];
+        }
+    }
+
+    /** Chooses the sample for the given matching threshold, for an exact filter. */
+    public static SampleFilter of( final PackedImage image1, final PackedImage image2, final double threshold) {
+        return new SampleFilter( image1, image2, threshold, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Chooses the sample for the given matching threshold, for an approximate filter that also
+     * rejects windows whose sampled average reaches margin times the threshold. The margin must
+     * be at least 1.
+     */
+    public static SampleFilter of( final PackedImage image1, final PackedImage image2, final double threshold, final double margin) {
+        return new SampleFilter( image1, image2, threshold, margin);
+    }
+
+    /** Returns true if the filter may reject a window that matches. */
+    public boolean isApproximate() {
+        return this.limit != Double.POSITIVE_INFINITY;
+    }
+
+    /** Returns the number of template pixels sampled, at most 16 + 64 + 256. */
+    public int numberOfSamples() {
+        return this.xs.length;
+    }
+
+    @Override
+    public boolean mayMatch( final int x1, final int y1) {
+        final int columns = Math.min( this.width2, this.width1 - x1);
+        final int rows = Math.min( this.height2, this.height1 - y1);
+        final double wholeWindow = this.threshold * columns * rows;
+        final int base = x1 * this.height1 + y1;
+        double difference = 0;
+        int count = 0;
+        int stage = 0;
+        for( int i = 0; i < this.xs.length; i++) {
+            //Samples outside a window truncated by the edge of the image are skipped
+            if ( this.xs[i] < columns && this.ys[i] < rows) {
+                difference += RasterMatcher.distance( this.pixels1[base + this.offsets[i]], this.rgbs[i]);
+                count++;
+            }
+            if ( i + 1 == this.stageEnds[stage]) {
+                if ( difference >= wholeWindow || (count > 0 && difference >= this.limit * count)) {
+                    return false;
+                }
+                stage++;
+            }
+        }
+        return true;
+    }
+
+    //The luminance difference of each template pixel to its right and lower neighbours, column by column
+    private static int[] contrast( final PackedImage image) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int[] contrast = new int[width * height];
+        for( int x = 0; x < width; x++) {
+            for( int y = 0; y < height; y++) {
+                final int luma = PackedImage.luminance( image.rgb( x, y));
+                final int right = x + 1 < width ? PackedImage.luminance( image.rgb( x + 1, y)) : luma;
+                final int below = y + 1 < height ? PackedImage.luminance( image.rgb( x, y + 1)) : luma;
+                contrast[x * height + y] = Math.abs( right - luma) + Math.abs( below - luma);
+            }
+        }
+        return contrast;
+    }
+
+    //The unchosen pixel with the highest contrast in the cell, -1 if all are chosen
+    private static int highest( final int[] contrast, final boolean[] chosen, final int height,
+            final int left, final int right, final int top, final int bottom) {
+        int best = -1;
+        for( int x = left; x < right; x++) {
+            for( int y = top; y < bottom; y++) {
+                final int i = x * height + y;
+                if ( !chosen[i] && (best < 0 || contrast[i] > contrast[best])) {
+                    best = i;
+                }
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,103 @@
+package adp.image.report4;
+
+/**
+ * The K best scored positions seen so far, as a binary heap with the worst of them at the
+ * root. Lower scores are better, and of two equal scores the lower position. Not thread safe,
+ * each worker fills its own and they are merged afterwards.
+ */
+final class ScoreHeap {
+
+    private final int capacity;
+    private final int[] positions;
+    private final double[] scores;
+    private int size = 0;
+
+    ScoreHeap( final int capacity) {
+        this.capacity = capacity;
+        this.positions = new int[capacity];
+        this.scores = new double[capacity];
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    /** Returns the score a position has to beat to get in, infinity while there is room. */
+    double bound() {
+        return this.size < this.capacity ? Double.POSITIVE_INFINITY : this.scores[0];
+    }
+
+    /** Keeps the position if it is among the K best so far. */
+    void offer( final int position, final double score) {
+        if ( this.size < this.capacity) {
+            this.positions[this.size] = position;
+            this.scores[this.size] = score;
+            siftUp( this.size++);
+        } else if ( this.capacity > 0 && worse( this.scores[0], this.positions[0], score, position)) {
+            this.positions[0] = position;
+            this.scores[0] = score;
+            siftDown( 0);
+        }
+    }
+
+    void addAll( final ScoreHeap other) {
+        for( int i = 0; i < other.size; i++) {
+            offer( other.positions[i], other.scores[i]);
+        }
+    }
+
+    /** Empties the heap into the arrays, best first. */
+    void drainInto( final int[] positions, final double[] scores) {
+        for( int i = this.size - 1; i >= 0; i--) {
+            positions[i] = this.positions[0];
+            scores[i] = this.scores[0];
+            this.size--;
+            this.positions[0] = this.positions[this.size];
+            this.scores[0] = this.scores[this.size];
+            siftDown( 0);
+        }
+    }
+
+    private void siftUp( int i) {
+        while( i > 0) {
+            final int parent = (i - 1) / 2;
+            if ( !worse( this.scores[i], this.positions[i], this.scores[parent], this.positions[parent])) {
+                return;
+            }
+            swap( i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown( int i) {
+        while( true) {
+            final int left = 2 * i + 1;
+            if ( left >= this.size) {
+                return;
+            }
+            int child = left;
+            if ( left + 1 < this.size && worse( this.scores[left + 1], this.positions[left + 1], this.scores[left], this.positions[left])) {
+                child = left + 1;
+            }
+            if ( !worse( this.scores[child], this.positions[child], this.scores[i], this.positions[i])) {
+                return;
+            }
+            swap( i, child);
+            i = child;
+        }
+    }
+
+    private void swap( final int i, final int j) {
+        final int position = this.positions[i];
+        this.positions[i] = this.positions[j];
+        this.positions[j] = position;
+        final double score = this.scores[i];
+        this.scores[i] = this.scores[j];
+        this.scores[j] = score;
+    }
+
+    //True if (score1, position1) ranks behind (score2, position2)
+    private static boolean worse( final double score1, final int position1, final double score2, final int position2) {
+        return score1 > score2 || (score1 == score2 && position1 > position2);
+    }
+}
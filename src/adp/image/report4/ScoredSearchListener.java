@@ -0,0 +1,13 @@
+package adp.image.report4;
+
+import adp.image.jar.Searcher.SearchListener;
+
+/** A SearchListener that is also told the score of each match. */
+public interface ScoredSearchListener extends SearchListener {
+
+    /**
+     * Called instead of {@link #possibleMatch(int, long, long)} with the average colour
+     * distance of the match, lower being better.
+     */
+    void possibleMatch( int position, double score, long elapsedTime, long positionsTriedSoFar);
+}
@@ -0,0 +1,122 @@
+package adp.image.report4;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The Java Flight Recorder events of the searchers, in the "Image Search" category, so a
+ * recording of a slow search shows where its time went: decoding, unpacking, the leaf tasks
+ * of a fork-join search, the matches, and the search as a whole.
+ * <p>
+ * While no recording has them enabled, an event is created and dropped without its fields
+ * being filled in or anything being written, so they can stay in production code.
+ */
+public final class SearchEvents {
+
+    private static final String CATEGORY = "Image Search";
+
+    private SearchEvents() {
+    }
+
+    /** A whole search, from its start to its end. Committed by {@link SearchMetrics.Run}. */
+    @Name( "adp.image.Search")
+    @Label( "Search")
+    @Category( CATEGORY)
+    @StackTrace( false)
+    public static final class Search extends Event {
+        @Label( "Searcher")
+        public String searcher;
+
+        @Label( "Positions To Try")
+        public long positionsToTry;
+
+        @Label( "Positions Tried")
+        public long positionsTried;
+
+        @Label( "Positions Pruned")
+        @Description( "Positions ruled out by a filter without being scored")
+        public long positionsPruned;
+
+        @Label( "Positions Abandoned")
+        @Description( "Positions whose scoring stopped before the last template column")
+        public long positionsAbandoned;
+
+        @Label( "Matches")
+        public long matches;
+
+        @Label( "Cancelled")
+        public boolean cancelled;
+    }
+
+    /** One leaf task of a fork-join search, covering the positions from first to end. */
+    @Name( "adp.image.Chunk")
+    @Label( "Search Chunk")
+    @Category( CATEGORY)
+    @StackTrace( false)
+    public static final class Chunk extends Event {
+        @Label( "Searcher")
+        public String searcher;
+
+        @Label( "First Position")
+        public int first;
+
+        @Label( "End Position")
+        @Description( "One past the last position of the chunk")
+        public int end;
+
+        @Label( "Positions Tried")
+        @Description( "Fewer than end - first if the search was cancelled")
+        public int positionsTried;
+    }
+
+    /** A position reported as a match. */
+    @Name( "adp.image.Match")
+    @Label( "Match")
+    @Category( CATEGORY)
+    @StackTrace( false)
+    public static final class Match extends Event {
+        @Label( "Searcher")
+        public String searcher;
+
+        @Label( "Position")
+        public long position;
+    }
+
+    /** An image file decoded with ImageIO. */
+    @Name( "adp.image.Decode")
+    @Label( "Decode")
+    @Category( CATEGORY)
+    @StackTrace( false)
+    public static final class Decode extends Event {
+        @Label( "File")
+        public String file;
+
+        @Label( "Width")
+        public int width;
+
+        @Label( "Height")
+        public int height;
+    }
+
+    /** A BufferedImage unpacked into a {@link PackedImage}. */
+    @Name( "adp.image.Unpack")
+    @Label( "Unpack")
+    @Category( CATEGORY)
+    @StackTrace( false)
+    public static final class Unpack extends Event {
+        @Label( "Width")
+        public int width;
+
+        @Label( "Height")
+        public int height;
+
+        @Label( "Pixel Data")
+        @DataAmount
+        public long bytes;
+    }
+}
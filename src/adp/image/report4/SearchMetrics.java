@@ -0,0 +1,263 @@
+package adp.image.report4;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Throughput and latency of the searches run by one searcher class, registered with the
+ * platform MBean server on first use so it can be watched from JConsole or any JMX client.
+ * <p>
+ * A searcher calls {@link #start(long)} as its search begins, {@link Run#match(long)} for each
+ * match and {@link Run#end(long, long, long)} once it is over, and its fork-join leaf tasks report
+ * their running time to {@link #workerBusy(long)}. None of these is called per position, so the
+ * metrics cost a search nothing in its inner loop; the pruned and abandoned windows are counted
+ * by the {@link RasterMatcher}. Counts from every instance of the class are added together. A
+ * Run also records the search and its matches as {@link SearchEvents}.
+ */
+public final class SearchMetrics implements SearchMetricsMXBean {
+
+    /** The JMX domain of the search and decode metrics. */
+    public static final String DOMAIN = "adp.image";
+
+    private static final ConcurrentMap<String, SearchMetrics> METRICS = new ConcurrentHashMap<String, SearchMetrics>();
+
+    /** One search, from {@link SearchMetrics#start(long)} to {@link #end(long, long, long)}. */
+    public final class Run {
+        private final long startTime = System.nanoTime();
+        private final AtomicBoolean matched = new AtomicBoolean();
+        private final LongAdder runMatches = new LongAdder();
+        private final SearchEvents.Search event = new SearchEvents.Search();
+        private final long positionsToTry;
+        private volatile boolean cancelled = false;
+
+        private Run( final long positionsToTry) {
+            this.positionsToTry = positionsToTry;
+            this.event.begin();
+        }
+
+        /**
+         * Counts a match at the given position, and the time to it if it is the first one. May
+         * be called from any thread.
+         */
+        public void match( final long position) {
+            matches.increment();
+            this.runMatches.increment();
+            final SearchEvents.Match match = new SearchEvents.Match();
+            if ( match.shouldCommit()) {
+                match.searcher = searcher;
+                match.position = position;
+                match.commit();
+            }
+            if ( !this.matched.get() && this.matched.compareAndSet( false, true)) {
+                final long time = System.nanoTime() - this.startTime;
+                searchesMatched.increment();
+                timeToFirstMatch.add( time);
+                lastTimeToFirstMatch.set( time);
+            }
+        }
+
+        /** Marks the search as cancelled. It must still be ended. */
+        public void cancelled() {
+            this.cancelled = true;
+        }
+
+        /** Ends a search that does not count abandoned positions. */
+        public void end( final long positionsTried, final long positionsPruned) {
+            end( positionsTried, positionsPruned, 0);
+        }
+
+        /**
+         * Ends the search, which tried the given number of positions, pruned that many of them
+         * and abandoned scoring that many before the last column.
+         */
+        public void end( final long positionsTried, final long positionsPruned, final long positionsAbandoned) {
+            final long time = System.nanoTime() - this.startTime;
+            active.decrementAndGet();
+            searches.increment();
+            if ( this.cancelled) {
+                cancelledSearches.increment();
+            }
+            SearchMetrics.this.positionsTried.add( positionsTried);
+            SearchMetrics.this.positionsPruned.add( positionsPruned);
+            SearchMetrics.this.positionsAbandoned.add( positionsAbandoned);
+            searchTime.add( time);
+            lastPositionsPerSecond.set( Double.doubleToLongBits( time == 0 ? 0 : positionsTried * 1e9 / time));
+
+            this.event.end();
+            if ( this.event.shouldCommit()) {
+                this.event.searcher = searcher;
+                this.event.positionsToTry = this.positionsToTry;
+                this.event.positionsTried = positionsTried;
+                this.event.positionsPruned = positionsPruned;
+                this.event.positionsAbandoned = positionsAbandoned;
+                this.event.matches = this.runMatches.sum();
+                this.event.cancelled = this.cancelled;
+                this.event.commit();
+            }
+        }
+    }
+
+    private final String searcher;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder cancelledSearches = new LongAdder();
+    private final LongAdder positionsTried = new LongAdder();
+    private final LongAdder positionsPruned = new LongAdder();
+    private final LongAdder positionsAbandoned = new LongAdder();
+    private final LongAdder matches = new LongAdder();
+    private final LongAdder searchesMatched = new LongAdder();
+    //Times in nanoseconds
+    private final LongAdder searchTime = new LongAdder();
+    private final LongAdder timeToFirstMatch = new LongAdder();
+    private final LongAdder workerBusy = new LongAdder();
+    private final AtomicLong lastTimeToFirstMatch = new AtomicLong();
+    //The bits of a double
+    private final AtomicLong lastPositionsPerSecond = new AtomicLong();
+
+    private SearchMetrics( final String searcher) {
+        this.searcher = searcher;
+    }
+
+    /** Returns the metrics of the given searcher class, registering them with JMX the first time. */
+    public static SearchMetrics of( final Class<?> searcher) {
+        final String name = searcher.getSimpleName().isEmpty() ? searcher.getName() : searcher.getSimpleName();
+        return METRICS.computeIfAbsent( name, SearchMetrics::register);
+    }
+
+    //Metrics that cannot be registered, e.g. under a security manager, are still kept
+    private static SearchMetrics register( final String name) {
+        final SearchMetrics metrics = new SearchMetrics( name);
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean( metrics, new ObjectName( DOMAIN + ":type=SearchMetrics,name=" + name));
+        } catch ( JMException | SecurityException e) {
+            // not exported, nothing else depends on it
+        }
+        return metrics;
+    }
+
+    /** Counts a search as waiting in a pool's queue until {@link #dequeued()}. */
+    public void queued() {
+        this.queued.incrementAndGet();
+    }
+
+    public void dequeued() {
+        this.queued.decrementAndGet();
+    }
+
+    /** Counts a search of the given number of positions as active until the returned Run is ended. */
+    public Run start( final long positionsToTry) {
+        this.active.incrementAndGet();
+        return new Run( positionsToTry);
+    }
+
+    /** Adds the given nanoseconds a worker thread spent in a task of these searches. */
+    public void workerBusy( final long nanos) {
+        this.workerBusy.add( nanos);
+    }
+
+    @Override
+    public String getSearcher() {
+        return this.searcher;
+    }
+
+    @Override
+    public long getSearches() {
+        return this.searches.sum();
+    }
+
+    @Override
+    public long getCancelledSearches() {
+        return this.cancelledSearches.sum();
+    }
+
+    @Override
+    public int getActiveSearches() {
+        return this.active.get();
+    }
+
+    @Override
+    public int getQueuedSearches() {
+        return this.queued.get();
+    }
+
+    @Override
+    public long getPositionsTried() {
+        return this.positionsTried.sum();
+    }
+
+    @Override
+    public long getMatches() {
+        return this.matches.sum();
+    }
+
+    @Override
+    public double getPositionsPerSecond() {
+        final long time = this.searchTime.sum();
+        return time == 0 ? 0 : this.positionsTried.sum() * 1e9 / time;
+    }
+
+    @Override
+    public double getLastPositionsPerSecond() {
+        return Double.longBitsToDouble( this.lastPositionsPerSecond.get());
+    }
+
+    @Override
+    public double getMeanTimeToFirstMatchMillis() {
+        final long searches = this.searchesMatched.sum();
+        return searches == 0 ? 0 : this.timeToFirstMatch.sum() / 1e6 / searches;
+    }
+
+    @Override
+    public double getLastTimeToFirstMatchMillis() {
+        return this.lastTimeToFirstMatch.get() / 1e6;
+    }
+
+    @Override
+    public double getPruneRate() {
+        final long tried = this.positionsTried.sum();
+        return tried == 0 ? 0 : this.positionsPruned.sum() / (double) tried;
+    }
+
+    @Override
+    public double getAbandonRate() {
+        final long scored = this.positionsTried.sum() - this.positionsPruned.sum();
+        return scored <= 0 ? 0 : this.positionsAbandoned.sum() / (double) scored;
+    }
+
+    @Override
+    public long getWorkerBusyMillis() {
+        return this.workerBusy.sum() / 1000000;
+    }
+
+    //Busy time and search time both add up over concurrent searches, so their ratio still holds
+    @Override
+    public double getMeanWorkersBusy() {
+        final long time = this.searchTime.sum();
+        return time == 0 ? 0 : this.workerBusy.sum() / (double) time;
+    }
+
+    @Override
+    public void reset() {
+        this.searches.reset();
+        this.cancelledSearches.reset();
+        this.positionsTried.reset();
+        this.positionsPruned.reset();
+        this.positionsAbandoned.reset();
+        this.matches.reset();
+        this.searchesMatched.reset();
+        this.searchTime.reset();
+        this.timeToFirstMatch.reset();
+        this.lastTimeToFirstMatch.set( 0);
+        this.lastPositionsPerSecond.set( 0);
+        this.workerBusy.reset();
+    }
+}
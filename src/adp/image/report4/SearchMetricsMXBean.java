@@ -0,0 +1,58 @@
+package adp.image.report4;
+
+/**
+ * The management interface of {@link SearchMetrics}, exported over JMX as
+ * {@code adp.image:type=SearchMetrics,name=<searcher class>}.
+ */
+public interface SearchMetricsMXBean {
+
+    /** Returns the simple name of the searcher class these metrics are for. */
+    String getSearcher();
+
+    /** Returns the number of searches that have ended, cancelled ones included. */
+    long getSearches();
+
+    long getCancelledSearches();
+
+    int getActiveSearches();
+
+    /** Returns the number of searches submitted to a pool that have not started yet. */
+    int getQueuedSearches();
+
+    long getPositionsTried();
+
+    long getMatches();
+
+    /** Returns the positions tried per second over all ended searches. */
+    double getPositionsPerSecond();
+
+    /** Returns the positions tried per second by the search that ended last. */
+    double getLastPositionsPerSecond();
+
+    /** Returns the mean time from the start of a search to its first match, over the searches that had one. */
+    double getMeanTimeToFirstMatchMillis();
+
+    /** Returns the time to the first match of the search that found one last. */
+    double getLastTimeToFirstMatchMillis();
+
+    /** Returns the share of the positions tried that a filter ruled out without scoring. */
+    double getPruneRate();
+
+    /**
+     * Returns the share of the scored positions whose scoring was abandoned before the last
+     * template column, counted by searchers that score through a {@link RasterMatcher}.
+     */
+    double getAbandonRate();
+
+    /** Returns the time the worker threads together spent in the fork-join tasks of these searches. */
+    long getWorkerBusyMillis();
+
+    /**
+     * Returns the mean number of worker threads busy with a search while it ran, the worker
+     * busy time divided by the time the searches ran.
+     */
+    double getMeanWorkersBusy();
+
+    /** Sets every counter back to 0. Active and queued searches are still counted. */
+    void reset();
+}
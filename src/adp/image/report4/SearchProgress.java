@@ -0,0 +1,53 @@
+package adp.image.report4;
+
+/**
+ * An immutable snapshot of the progress of a search, consistent across all of its workers at
+ * the moment it was taken, up to the positions they have not yet added to their
+ * {@link ProgressCounter}.
+ */
+public final class SearchProgress {
+
+    /** Implemented by searchers that can report their progress while running. */
+    public interface Source {
+
+        /** Returns the progress of the running or last search. May be called from any thread. */
+        SearchProgress progress();
+    }
+
+    private final long positionsTried;
+    private final long positionsToTry;
+    private final long elapsedTime;
+
+    public SearchProgress( final long positionsTried, final long positionsToTry, final long elapsedTime) {
+        this.positionsTried = positionsTried;
+        this.positionsToTry = positionsToTry;
+        this.elapsedTime = elapsedTime;
+    }
+
+    public long getPositionsTried() {
+        return this.positionsTried;
+    }
+
+    public long getPositionsToTry() {
+        return this.positionsToTry;
+    }
+
+    /** Returns the milliseconds since the search started. */
+    public long getElapsedTime() {
+        return this.elapsedTime;
+    }
+
+    /** Returns the share of the positions tried, between 0 and 1. */
+    public double fraction() {
+        return this.positionsToTry == 0 ? 1 : Math.min( 1, this.positionsTried / (double) this.positionsToTry);
+    }
+
+    public double positionsPerSecond() {
+        return this.elapsedTime == 0 ? 0 : this.positionsTried * 1000.0 / this.elapsedTime;
+    }
+
+    @Override
+    public String toString() {
+        return this.positionsTried + " of " + this.positionsToTry + " positions in " + (this.elapsedTime / 1000.0) + "s";
+    }
+}
@@ -0,0 +1,271 @@
+package adp.image.report4;
+
+import adp.image.jar.Searcher.SearchCancelledException;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Searches for a template in a main image file too large to hold in memory. The main image is
+ * read through {@link ImageReader} source regions, so only part of it is ever decoded and
+ * unpacked, whatever the size of the image.
+ * <p>
+ * Formats stored in tiles, such as tiled TIFF, are read one tile at a time, and the reader
+ * only decodes the tiles of the file that the region covers. Sequential formats such as JPEG
+ * and PNG have to decode every row above a region to reach it, so they are read one band of
+ * tiles at a time: the full width of the image, decoded once and searched tile by tile. A band
+ * of {@code width * (tileHeight + template height)} pixels is then held in memory, and the rows
+ * above each band are still decoded again for every band, so reading costs about as many
+ * decodes of the image as there are bands. Tall tiles keep that number down.
+ * <p>
+ * Every tile is extended right and down by the template size less one pixel, so a window
+ * starting in a tile lies wholly inside it and matches across tile borders are found. The
+ * windows are scored exactly as {@link RasterSearcher} scores them. Only the positions where
+ * the whole template fits are tried, unless a smaller minimum overlap is set, in which case
+ * the windows truncated by the right and bottom edges of the image are scored as well.
+ * <p>
+ * Positions are reported as (x, y), since {@code width * height} of a large image does not
+ * fit into an int. Matches are reported tile by tile, in position order within a tile.
+ */
+public class TiledSearcher implements SearchProgress.Source {
+
+    /** Default width and height of a tile, overlap excluded. */
+    public static final int DEFAULT_TILE_SIZE = 2048;
+
+    /** Receives the progress and matches of a TiledSearcher. */
+    public interface TileListener {
+
+        void information( String message);
+
+        /** Called when the template appears to match with its top left corner at (x, y). */
+        void possibleMatch( int x, int y, long elapsedTime, long positionsTriedSoFar);
+
+        void update( int x, int y, long elapsedTime, long positionsTriedSoFar);
+    }
+
+    private final File file;
+    private final PackedImage template;
+    private final int tileWidth;
+    private final int tileHeight;
+    private final int width;
+    private final int height;
+    private Placements placements;
+
+    private final ProgressCounter counter = new ProgressCounter();
+    private final SearchMetrics metrics = SearchMetrics.of( getClass());
+    private volatile boolean cancelled = false;
+    //The windows the tile matchers abandoned, only touched by the searching thread
+    private long abandoned;
+
+    /**
+     * Constructs a TiledSearcher that will attempt to find template somewhere in the image
+     * stored in file, using tiles of the default size.
+     *
+     * @throws IOException if the size of the image cannot be read
+     */
+    public TiledSearcher( final File file, final BufferedImage template) throws IOException {
+        this( file, PackedImage.of( template), DEFAULT_TILE_SIZE, DEFAULT_TILE_SIZE);
+    }
+
+    /**
+     * Constructs a TiledSearcher reading tiles of tileWidth by tileHeight pixels, each plus
+     * the overlap.
+     *
+     * @throws IOException if the size of the image cannot be read
+     */
+    public TiledSearcher( final File file, final PackedImage template, final int tileWidth, final int tileHeight) throws IOException {
+        if ( tileWidth < 1 || tileHeight < 1) {
+            throw new IllegalArgumentException( "Tiles must be at least 1x1: " + tileWidth + "x" + tileHeight);
+        }
+        this.file = file;
+        this.template = template;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        final ImageInputStream in = ImageIO.createImageInputStream( file);
+        if ( in == null) {
+            throw new IOException( "Cannot open " + file);
+        }
+        try {
+            final ImageReader reader = readerFor( in);
+            try {
+                this.width = reader.getWidth( 0);
+                this.height = reader.getHeight( 0);
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            in.close();
+        }
+        this.placements = Placements.of( this.width, this.height, template.getWidth(), template.getHeight(), template.getWidth(), template.getHeight());
+    }
+
+    /** Returns the positions a search tries, as (x, y) since they are numbered over a long. */
+    public Placements getPlacements() {
+        return this.placements;
+    }
+
+    /** Sets the minimum overlap of the template, see {@link RasterMatcher#setMinimumOverlap(int, int)}. */
+    public void setMinimumOverlap( final int columns, final int rows) {
+        this.placements = Placements.of( this.width, this.height, this.template.getWidth(), this.template.getHeight(), columns, rows);
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    public long numberOfPositionsToTry() {
+        return this.placements.size();
+    }
+
+    public long numberOfPositionsTriedSoFar() {
+        return this.counter.positionsTried();
+    }
+
+    @Override
+    public SearchProgress progress() {
+        return this.counter.snapshot( numberOfPositionsToTry());
+    }
+
+    /** Resets the searcher to re-run its search, also after it has been cancelled. */
+    public void reset() {
+        restart();
+        this.cancelled = false;
+    }
+
+    //Resets what a run starts from, but keeps a cancel that came before the run
+    private void restart() {
+        this.counter.start();
+        this.abandoned = 0;
+    }
+
+    /**
+     * Makes a running search throw {@link SearchCancelledException} before its next position.
+     * A search not started yet throws as soon as it starts, until {@link #reset()} is called.
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    /**
+     * Reads the tiles in turn, left to right and top to bottom, and attempts every position
+     * in each. The listener methods are invoked on the thread that calls this method.
+     *
+     * @throws IOException if a tile cannot be read
+     */
+    public void runSearch( final TileListener listener) throws IOException, SearchCancelledException {
+        this.restart();
+        listener.information( "SEARCHING...");
+        final long startTime = System.currentTimeMillis();
+        final ImageInputStream in = ImageIO.createImageInputStream( this.file);
+        if ( in == null) {
+            throw new IOException( "Cannot open " + this.file);
+        }
+        final SearchMetrics.Run run = this.metrics.start( numberOfPositionsToTry());
+        try {
+            final ImageReader reader = readerFor( in);
+            try {
+                final boolean tiled = reader.isImageTiled( 0);
+                for( int tileY = 0; tileY <= this.placements.lastY(); tileY += this.tileHeight) {
+                    //A sequential format is decoded once per band, not once per tile
+                    final BufferedImage band = tiled ? null : read( reader, new Rectangle( 0, tileY, this.width, regionHeight( tileY)));
+                    for( int tileX = 0; tileX <= this.placements.lastX(); tileX += this.tileWidth) {
+                        final Rectangle region = new Rectangle( tileX, tileY, regionWidth( tileX), regionHeight( tileY));
+                        final BufferedImage tile = tiled ? read( reader, region) : band.getSubimage( tileX, 0, region.width, region.height);
+                        searchTile( PackedImage.of( tile), tileX, tileY, listener, startTime, run);
+                    }
+                }
+            } finally {
+                reader.dispose();
+            }
+        } catch ( SearchCancelledException e) {
+            run.cancelled();
+            throw e;
+        } finally {
+            in.close();
+            run.end( numberOfPositionsTriedSoFar(), 0, this.abandoned);
+        }
+        listener.information("Finished at " + ((System.currentTimeMillis() - startTime) / 1000.0) + "s\n");
+    }
+
+    //The tile's own columns and rows plus the overlap, clipped to the image
+    private int regionWidth( final int tileX) {
+        return Math.min( ownWidth( tileX) + this.template.getWidth() - 1, this.width - tileX);
+    }
+
+    private int regionHeight( final int tileY) {
+        return Math.min( ownHeight( tileY) + this.template.getHeight() - 1, this.height - tileY);
+    }
+
+    private int ownWidth( final int tileX) {
+        return Math.min( this.tileWidth, this.placements.lastX() + 1 - tileX);
+    }
+
+    private int ownHeight( final int tileY) {
+        return Math.min( this.tileHeight, this.placements.lastY() + 1 - tileY);
+    }
+
+    private static BufferedImage read( final ImageReader reader, final Rectangle region) throws IOException {
+        final ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion( region);
+        return reader.read( 0, param);
+    }
+
+    //Tries the positions the tile owns in its pixels, which include the overlap
+    private void searchTile( final PackedImage tile, final int tileX, final int tileY, final TileListener listener, final long startTime, final SearchMetrics.Run run) {
+        final RasterMatcher matcher = new RasterMatcher( tile, this.template);
+        try {
+            scanTile( matcher, tileX, tileY, listener, startTime, run);
+        } finally {
+            this.abandoned += matcher.numberOfAbandoned();
+        }
+    }
+
+    private void scanTile( final RasterMatcher matcher, final int tileX, final int tileY, final TileListener listener, final long startTime, final SearchMetrics.Run run) {
+        final int ownWidth = ownWidth( tileX);
+        final int ownHeight = ownHeight( tileY);
+        int pending = 0;
+        for( int y = 0; y < ownHeight; y++) {
+            for( int x = 0; x < ownWidth; x++) {
+                if ( this.cancelled) {
+                    this.counter.add( pending);
+                    listener.information( "Cancelled at " + ((System.currentTimeMillis() - startTime) / 1000.0) + "s\n");
+                    throw new SearchCancelledException();
+                }
+                final boolean hit = matcher.matches( x, y);
+                pending++;
+                if ( hit) {
+                    this.counter.add( pending);
+                    pending = 0;
+                    run.match( (long) (tileY + y) * this.width + tileX + x);
+                    listener.possibleMatch( tileX + x, tileY + y, System.currentTimeMillis() - startTime, numberOfPositionsTriedSoFar());
+                } else if ( pending == ProgressCounter.BATCH) {
+                    this.counter.add( pending);
+                    pending = 0;
+                    listener.update( tileX + x, tileY + y, System.currentTimeMillis() - startTime, numberOfPositionsTriedSoFar());
+                }
+            }
+        }
+        this.counter.add( pending);
+    }
+
+    private static ImageReader readerFor( final ImageInputStream in) throws IOException {
+        final Iterator<ImageReader> readers = ImageIO.getImageReaders( in);
+        if ( !readers.hasNext()) {
+            throw new IOException( "No ImageReader for this format");
+        }
+        final ImageReader reader = readers.next();
+        reader.setInput( in, false, true);
+        return reader;
+    }
+}
@@ -0,0 +1,252 @@
+package adp.image.report4;
+
+import adp.image.jar.Searcher;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A Searcher that finds the K positions with the lowest average colour distance instead of
+ * every position under a threshold.
+ * <p>
+ * The positions are split into row-aligned fork-join chunks, as in
+ * {@link adp.image.report3.AdvancedAbstractSearcher}. Every leaf chunk keeps its own bounded
+ * heap of the K best positions it has seen, so the inner loop shares nothing with other
+ * threads, and scoring a window stops as soon as it can no longer beat the worst position in
+ * that heap. The heaps are merged pairwise as the chunks join.
+ * <p>
+ * The K best are reported to the listener at the end, best first, with their scores if it is
+ * a {@link ScoredSearchListener}, and are available from
+ * {@link #bestPositions()} and {@link #bestScores()}. Equal scores are ranked by position,
+ * so the result does not depend on how the chunks were scheduled.
+ */
+public class TopKSearcher implements Searcher, SearchProgress.Source {
+
+    /** Default number of image rows a chunk may cover before it is split further. */
+    public static final int DEFAULT_ROWS_PER_TASK = 8;
+
+    private final RasterMatcher matcher;
+    private final int k;
+    private final int rowsPerTask;
+
+    private final ProgressCounter counter = new ProgressCounter();
+    private final SearchMetrics metrics = SearchMetrics.of( getClass());
+    private volatile boolean cancelled = false;
+    private int[] bestPositions = new int[0];
+    private double[] bestScores = new double[0];
+
+    /**
+     * Constructs a TopKSearcher that will find the k positions of image1 where image2 fits best.
+     */
+    public TopKSearcher( final BufferedImage image1, final BufferedImage image2, final int k) {
+        this( new RasterMatcher( PackedImage.of( image1), PackedImage.of( image2)), k, DEFAULT_ROWS_PER_TASK);
+    }
+
+    /**
+     * Constructs a TopKSearcher scoring with the given matcher whose leaf tasks cover at most
+     * rowsPerTask rows. The matcher's threshold and filters are not used.
+     */
+    public TopKSearcher( final RasterMatcher matcher, final int k, final int rowsPerTask) {
+        if ( k < 1) {
+            throw new IllegalArgumentException( "k must be at least 1: " + k);
+        }
+        if ( rowsPerTask < 1) {
+            throw new IllegalArgumentException( "rowsPerTask must be at least 1: " + rowsPerTask);
+        }
+        this.matcher = matcher;
+        this.k = k;
+        this.rowsPerTask = rowsPerTask;
+    }
+
+    @Override
+    public int numberOfPositionsToTry() {
+        return (int) this.matcher.getPlacements().size();
+    }
+
+    @Override
+    public int numberOfPositionsTriedSoFar() {
+        return (int) this.counter.positionsTried();
+    }
+
+    /** Returns the positions tried by all chunks together. */
+    @Override
+    public SearchProgress progress() {
+        return this.counter.snapshot( numberOfPositionsToTry());
+    }
+
+    /**
+     * Resets the searcher so that it can be run again, also after it has been cancelled. Must
+     * not be called while a search is running.
+     */
+    @Override
+    public void reset() {
+        restart();
+        this.cancelled = false;
+    }
+
+    //Resets what a run starts from, but keeps a cancel that came before the run
+    private void restart() {
+        this.counter.start();
+        this.bestPositions = new int[0];
+        this.bestScores = new double[0];
+    }
+
+    /**
+     * Makes every chunk of a running search stop before its next position. A search not
+     * started yet stops as soon as it starts, until {@link #reset()} is called.
+     */
+    @Override
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    /** Returns the best positions found by the last search, best first. */
+    public int[] bestPositions() {
+        return this.bestPositions.clone();
+    }
+
+    /** Returns the scores of {@link #bestPositions()}, in the same order. */
+    public double[] bestScores() {
+        return this.bestScores.clone();
+    }
+
+    /**
+     * Runs the whole search in the calling thread's fork-join pool, or the common pool when
+     * called from outside one, then reports the K best positions in the calling thread.
+     */
+    @Override
+    public void runSearch( final SearchListener listener) throws SearchCancelledException {
+        this.restart();
+        listener.information( "SEARCHING FOR THE " + this.k + " BEST MATCHES...");
+        final long startTime = System.currentTimeMillis();
+        final SearchMetrics.Run run = this.metrics.start( numberOfPositionsToTry());
+        final int[] positions;
+        final double[] scores;
+        try {
+            final ScoreHeap best = new Chunk( 0, (int) this.matcher.getPlacements().end(), listener, startTime).invoke();
+            positions = new int[best.size()];
+            scores = new double[best.size()];
+            best.drainInto( positions, scores);
+            for( int position : positions) {
+                run.match( position);
+            }
+        } catch ( SearchCancelledException e) {
+            run.cancelled();
+            listener.information( "Cancelled at " + ((System.currentTimeMillis() - startTime) / 1000.0) + "s\n");
+            throw e;
+        } finally {
+            run.end( numberOfPositionsTriedSoFar(), 0);
+        }
+        this.bestPositions = positions;
+        this.bestScores = scores;
+
+        final ScoredSearchListener scored = listener instanceof ScoredSearchListener ? (ScoredSearchListener) listener : null;
+        final long elapsedTime = System.currentTimeMillis() - startTime;
+        for( int i = 0; i < positions.length; i++) {
+            if ( scored != null) {
+                scored.possibleMatch( positions[i], scores[i], elapsedTime, numberOfPositionsTriedSoFar());
+            } else {
+                listener.possibleMatch( positions[i], elapsedTime, numberOfPositionsTriedSoFar());
+            }
+        }
+        listener.information("Finished at " + ((System.currentTimeMillis() - startTime) / 1000.0) + "s\n");
+    }
+
+    /**
+     * One range of positions. Ranges wider than the granularity are halved on a row boundary,
+     * the left half is forked so it can be stolen and the right half is computed in place.
+     */
+    private final class Chunk extends RecursiveTask<ScoreHeap> {
+        private static final long serialVersionUID = 1L;
+
+        private final int first;
+        private final int end;
+        private final SearchListener listener;
+        private final long startTime;
+
+        Chunk( final int first, final int end, final SearchListener listener, final long startTime) {
+            this.first = first;
+            this.end = end;
+            this.listener = listener;
+            this.startTime = startTime;
+        }
+
+        @Override
+        protected ScoreHeap compute() {
+            if ( cancelled) {
+                throw new SearchCancelledException();
+            }
+            final int width = matcher.getMainImage().getWidth();
+            if ( this.end - this.first <= (long) rowsPerTask * width) {
+                return scan();
+            }
+            int middle = ((this.first + (this.end - this.first) / 2) / width) * width;
+            if ( middle <= this.first) {
+                middle += width;
+            }
+            final Chunk left = new Chunk( this.first, middle, this.listener, this.startTime);
+            final Chunk right = new Chunk( middle, this.end, this.listener, this.startTime);
+            left.fork();
+            final ScoreHeap rightBest;
+            try {
+                rightBest = right.compute();
+            } catch ( SearchCancelledException e) {
+                //Drop the left half too if nobody has stolen it yet
+                left.cancel( true);
+                throw e;
+            }
+            final ScoreHeap best = left.join();
+            best.addAll( rightBest);
+            return best;
+        }
+
+        //A loop scoring every position of a leaf chunk into a heap of its own
+        private ScoreHeap scan() {
+            final SearchEvents.Chunk event = new SearchEvents.Chunk();
+            event.begin();
+            final long scanStart = System.nanoTime();
+            final ScoreHeap best = new ScoreHeap( k);
+            final int width = matcher.getMainImage().getWidth();
+            final int lastX = matcher.getPlacements().lastX();
+            int pending = 0;
+            int tried = 0;
+            try {
+                for( int position = this.first; position < this.end; position++) {
+                    if ( cancelled) {
+                        throw new SearchCancelledException();
+                    }
+                    final int x = position % width;
+                    if ( x > lastX) {
+                        //Skip to the end of the row
+                        position += width - x - 1;
+                        continue;
+                    }
+                    final double bound = best.bound();
+                    final double score = matcher.score( x, position / width, bound);
+                    if ( score <= bound) {
+                        best.offer( position, score);
+                    }
+                    pending++;
+                    tried++;
+                    if ( pending == ProgressCounter.BATCH) {
+                        counter.add( pending);
+                        pending = 0;
+                        this.listener.update( position, System.currentTimeMillis() - this.startTime, counter.positionsTried());
+                    }
+                }
+            } finally {
+                counter.add( pending);
+                metrics.workerBusy( System.nanoTime() - scanStart);
+                event.end();
+                if ( event.shouldCommit()) {
+                    event.searcher = metrics.getSearcher();
+                    event.first = this.first;
+                    event.end = this.end;
+                    event.positionsTried = tried;
+                    event.commit();
+                }
+            }
+            return best;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package adp.image.report4;
+
+/**
+ * A cheap test a {@link RasterMatcher} runs before scoring a window in full. A filter may let
+ * through windows that do not match, but must never reject one that would, unless it is
+ * documented as approximate like a {@link SampleFilter} with a margin.
+ * <p>
+ * Filters are shared by all threads searching with the same matcher, so they must be safe
+ * for concurrent use once built.
+ */
+public interface WindowFilter {
+
+    /** Returns false only if the window with its top left corner at (x1, y1) cannot match. */
+    boolean mayMatch( int x1, int y1);
+}
@@ -0,0 +1,43 @@
+package adp.image.ui;
+
+import javax.swing.SwingUtilities;
+
+import adp.image.jar.Searcher.SearchListener;
+
+/**
+ * A SearchListener that passes every call on to another one on the Event Dispatch Thread,
+ * so a listener updating Swing components can be handed to a searcher running on any thread.
+ * Calls made on the Event Dispatch Thread are passed on directly, all others are queued in
+ * the order they are made.
+ */
+public final class EdtSearchListener implements SearchListener {
+
+	private final SearchListener listener;
+
+	public EdtSearchListener( final SearchListener listener) {
+		this.listener = listener;
+	}
+
+	@Override
+	public void information( final String message) {
+		onEdt( () -> this.listener.information( message));
+	}
+
+	@Override
+	public void possibleMatch( final int position, final long elapsedTime, final long positionsTriedSoFar) {
+		onEdt( () -> this.listener.possibleMatch( position, elapsedTime, positionsTriedSoFar));
+	}
+
+	@Override
+	public void update( final int position, final long elapsedTime, final long positionsTriedSoFar) {
+		onEdt( () -> this.listener.update( position, elapsedTime, positionsTriedSoFar));
+	}
+
+	private static void onEdt( final Runnable call) {
+		if ( SwingUtilities.isEventDispatchThread()) {
+			call.run();
+		} else {
+			SwingUtilities.invokeLater( call);
+		}
+	}
+}
@@ -0,0 +1,174 @@
+package adp.image.ui;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+
+/**
+ * Shows an image scaled down to at most 800 pixels a side, with the possible matches of a
+ * search outlined in yellow.
+ * <p>
+ * The scaled image, with the highlights drawn on it, is kept in a cache the size of the panel,
+ * so a repaint only copies the part of it Swing asks for. It is rebuilt only when the image,
+ * the size of the panel or the highlights are reset. New highlights are drawn onto the cache
+ * in batches, once per burst of {@link #addHighlight(Rectangle)} calls, and only the
+ * rectangles they cover are repainted.
+ */
+public class ImagePanel extends JPanel {
+	private static final long serialVersionUID = 1L;
+
+	private BufferedImage image;
+
+	private final List<Rectangle> highlights = new ArrayList<Rectangle>();
+	//Highlights not yet drawn onto the cache
+	private final List<Rectangle> pending = new ArrayList<Rectangle>();
+	private boolean flushScheduled = false;
+
+	//The image scaled to the panel, and the same with the highlights drawn on it
+	private BufferedImage scaled;
+	private BufferedImage composite;
+
+	public void setImage( BufferedImage image) {
+		this.image = image;
+		this.scaled = null;
+		this.composite = null;
+
+		double scale = 1;
+
+		if ( image.getWidth() >= image.getHeight()) {
+			if ( image.getWidth() > 800) {
+				scale = 800.0 / image.getWidth();
+			}
+		} else {
+			if ( image.getHeight() > 800) {
+				scale = 800.0 / image.getHeight();
+			}
+		}
+		Dimension d = new Dimension(
+				(int)Math.ceil(image.getWidth() * scale),
+				(int)Math.ceil(image.getHeight() * scale));
+		setPreferredSize( d);
+
+		invalidate();
+		repaint();
+	}
+
+	/**
+	 * Outlines r, given in image coordinates. May be called from any thread; the outline is
+	 * drawn on the Event Dispatch Thread together with the others added in the same burst.
+	 */
+	public void addHighlight( Rectangle r) {
+		synchronized( highlights) {
+			this.highlights.add( r);
+			this.pending.add( r);
+			if ( this.flushScheduled) {
+				return;
+			}
+			this.flushScheduled = true;
+		}
+		SwingUtilities.invokeLater( this::flushHighlights);
+	}
+
+	public void resetHighlights() {
+		synchronized( highlights) {
+			this.highlights.clear();
+			this.pending.clear();
+		}
+		this.composite = null;
+		repaint();
+	}
+
+	@Override
+	public void paintComponent( Graphics g) {
+		if ( this.image != null) {
+			if ( this.composite == null || this.composite.getWidth() != getWidth() || this.composite.getHeight() != getHeight()) {
+				rebuild();
+			}
+			g.drawImage( this.composite, 0, 0, this);
+		}
+	}
+
+	//Draws the highlights added since the last call onto the cache and repaints just them
+	private void flushHighlights() {
+		final Rectangle[] added;
+		synchronized( highlights) {
+			added = this.pending.toArray( new Rectangle[0]);
+			this.pending.clear();
+			this.flushScheduled = false;
+		}
+		if ( this.composite == null) {
+			//The next paint rebuilds the cache with every highlight
+			repaint();
+			return;
+		}
+		final double scale = scale();
+		final Graphics2D g = this.composite.createGraphics();
+		g.setColor( Color.YELLOW);
+		for( Rectangle r : added) {
+			final Rectangle s = scaled( r, scale);
+			g.draw( s);
+			//draw() covers one pixel past the right and bottom edges
+			repaint( s.x, s.y, s.width + 1, s.height + 1);
+		}
+		g.dispose();
+	}
+
+	//Scales the image to the panel if the size changed, then draws all highlights on a copy
+	private void rebuild() {
+		final int width = Math.max( 1, getWidth());
+		final int height = Math.max( 1, getHeight());
+		if ( this.scaled == null || this.scaled.getWidth() != width || this.scaled.getHeight() != height) {
+			this.scaled = compatibleImage( width, height);
+			final Graphics2D g = this.scaled.createGraphics();
+			g.setColor( getBackground());
+			g.fillRect( 0, 0, width, height);
+			g.setRenderingHint( RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.drawImage( this.image, 0, 0, width, (int)(this.image.getHeight() * scale()), null);
+			g.dispose();
+		}
+		this.composite = compatibleImage( width, height);
+		final Graphics2D g = this.composite.createGraphics();
+		g.drawImage( this.scaled, 0, 0, null);
+		g.setColor( Color.YELLOW);
+		final double scale = scale();
+		synchronized( highlights) {
+			for( Rectangle r : highlights) {
+				g.draw( scaled( r, scale));
+			}
+			//All of them are drawn now
+			this.pending.clear();
+		}
+		g.dispose();
+	}
+
+	private double scale() {
+		return getWidth() / (double)this.image.getWidth();
+	}
+
+	private static Rectangle scaled( Rectangle r, double scale) {
+		return new Rectangle(
+				(int)(r.x * scale),
+				(int)(r.y * scale),
+				(int)(r.width * scale),
+				(int)(r.height * scale));
+	}
+
+	//An image in the screen's own format where there is one, so drawing it needs no conversion
+	private BufferedImage compatibleImage( int width, int height) {
+		final GraphicsConfiguration configuration = getGraphicsConfiguration();
+		if ( configuration != null) {
+			return configuration.createCompatibleImage( width, height);
+		}
+		return new BufferedImage( width, height, BufferedImage.TYPE_INT_RGB);
+	}
+}
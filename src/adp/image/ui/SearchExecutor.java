@@ -0,0 +1,43 @@
+package adp.image.ui;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+import adp.image.jar.Searcher;
+import adp.image.jar.Searcher.SearchListener;
+import adp.image.report4.SearchMetrics;
+
+/**
+ * The long-lived pool the front ends run their searches on, so a search never blocks the
+ * Event Dispatch Thread and any number of searches can run back to back or side by side.
+ * Fork-join searchers such as {@link adp.image.report3.AdvancedSearcher} fork their chunks
+ * into the same pool.
+ */
+public final class SearchExecutor {
+
+	private static final ForkJoinPool POOL = new ForkJoinPool();
+
+	private SearchExecutor() {
+	}
+
+	/** Returns the shared pool. It is never shut down, its threads are daemons. */
+	public static ForkJoinPool pool() {
+		return POOL;
+	}
+
+	/**
+	 * Starts {@link Searcher#runSearch(SearchListener)} on the shared pool and returns at once.
+	 * The future completes with the number of positions tried, or exceptionally with
+	 * {@link Searcher.SearchCancelledException} if the search is cancelled. The search counts as
+	 * queued in its {@link SearchMetrics} until a worker picks it up.
+	 */
+	public static CompletableFuture<Integer> submit( final Searcher searcher, final SearchListener listener) {
+		final SearchMetrics metrics = SearchMetrics.of( searcher.getClass());
+		metrics.queued();
+		return CompletableFuture.supplyAsync( () -> {
+			metrics.dequeued();
+			searcher.runSearch( listener);
+			return searcher.numberOfPositionsTriedSoFar();
+		}, POOL);
+	}
+}
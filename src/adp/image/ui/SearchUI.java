@@ -1,10 +1,6 @@
 package adp.image.ui;
 
 import java.awt.BorderLayout;
-import java.awt.Color;
-import java.awt.Dimension;
-import java.awt.Graphics;
-import java.awt.Graphics2D;
 import java.awt.GridLayout;
 import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
@@ -14,8 +10,8 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletionException;
 
-import javax.imageio.ImageIO;
 import javax.swing.JButton;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
@@ -26,13 +22,15 @@ import javax.swing.SwingUtilities;
 import adp.image.jar.BasicSearcher;
 import adp.image.jar.Searcher;
 import adp.image.jar.Searcher.SearchListener;
+import adp.image.report4.ImageCache;
+import adp.image.report4.ProgressDispatcher;
 
 /**
  * This class implements a basic GUI interface for Searcher
- * implementations. This class implements SearchListener to 
- * receive the Searcher's output information.
+ * implementations. Every search gets a listener of its own, holding
+ * the images it searches, to receive the Searcher's output information.
  */
-public class SearchUI extends JFrame implements SearchListener {
+public class SearchUI extends JFrame {
 	private static final long serialVersionUID = 1L;
 
 	private final JButton openBigButton = new JButton( "Open main image");
@@ -48,8 +46,10 @@ public class SearchUI extends JFrame implements SearchListener {
 
 	private final JLabel outputLabel = new JLabel( "information");
 	private final JButton startButton = new JButton( "Start");
+	private final JButton cancelButton = new JButton( "Cancel");
 
-	private Searcher searcher;
+	//The searches started and not yet finished, only touched on the Event Dispatch Thread
+	private final List<Searcher> running = new ArrayList<Searcher>();
 
 	private BufferedImage mainImage;
 	private BufferedImage smallImage;
@@ -79,7 +79,10 @@ public class SearchUI extends JFrame implements SearchListener {
 
 		final JPanel bottomPanel = new JPanel( new BorderLayout());
 		bottomPanel.add( this.outputLabel, BorderLayout.CENTER);
-		bottomPanel.add( this.startButton, BorderLayout.SOUTH);
+		final JPanel buttonPanel = new JPanel( new GridLayout(1,0));
+		buttonPanel.add( this.startButton);
+		buttonPanel.add( this.cancelButton);
+		bottomPanel.add( buttonPanel, BorderLayout.SOUTH);
 
 		final JPanel mainPanel = new JPanel( new BorderLayout());
 
@@ -94,7 +97,7 @@ public class SearchUI extends JFrame implements SearchListener {
 					File file = chooser.getSelectedFile();
 					mainFilenameLabel.setText( file.getName());
 					try {
-						mainImage = ImageIO.read(file);
+						mainImage = ImageCache.shared().read(file);
 					} catch (IOException e) {
 						// TODO Auto-generated catch block
 						e.printStackTrace();
@@ -114,7 +117,7 @@ public class SearchUI extends JFrame implements SearchListener {
 					File file = chooser.getSelectedFile();
 					smallFilenameLabel.setText( file.getName());
 					try {
-						smallImage = ImageIO.read(file);
+						smallImage = ImageCache.shared().read(file);
 					} catch (IOException e) {
 						// TODO Auto-generated catch block
 						e.printStackTrace();
@@ -134,6 +137,16 @@ public class SearchUI extends JFrame implements SearchListener {
 			}
 		});
 
+		this.cancelButton.setEnabled( false);
+		this.cancelButton.addActionListener( new ActionListener() {
+			@Override
+			public void actionPerformed( final ActionEvent ev) {
+				for( Searcher searcher : running) {
+					searcher.cancel();
+				}
+			}
+		});
+
 		this.chooser.setMultiSelectionEnabled( false);
 		this.chooser.setFileSelectionMode( JFileChooser.FILES_ONLY);
 		this.chooser.setCurrentDirectory( new File( "."));
@@ -143,131 +156,90 @@ public class SearchUI extends JFrame implements SearchListener {
 		setVisible( true);
 	}
 
-	private void addActionListenerStartButton(){
-		startButton.addActionListener( new ActionListener() {
-			@Override
-			public void actionPerformed( final ActionEvent ev) {
-				runSearch();
-			}
-		});
-	}
 	/**
-	 * Clears output label and runs the search by calling {@link Searcher#runSearch(SearchListener)}.
+	 * Clears output label and starts the search on the {@link SearchExecutor} pool, so the
+	 * window stays responsive and another search can be started at any time. Listener calls
+	 * are passed back onto the Event Dispatch Thread.
 	 */
 	private void runSearch() {
-		for (ActionListener al : startButton.getActionListeners()) {
-			startButton.removeActionListener(al);
+		if ( mainImage == null || smallImage == null) {
+			this.outputLabel.setText( "Open both images first");
+			return;
 		}
-		this.searcher = new BasicSearcher( mainImage, smallImage);
+		final Searcher searcher = new BasicSearcher( mainImage, smallImage);
+		this.running.add( searcher);
+		this.cancelButton.setEnabled( true);
 		this.outputLabel.setText("information");
-		this.searcher.runSearch( this);
-	}
-
-	/**
-	 * Implements {@link SearchListener#information(String)} by displaying the information
-	 * in the UI output label.
-	 */
-	@Override
-	public void information( final String message) {
-		this.outputLabel.setText( message + "\n");
+		SearchExecutor.submit( searcher, new ProgressDispatcher( new EdtSearchListener( new SearchView( mainImage, smallImage)))).whenComplete( (positions, error) -> {
+			SwingUtilities.invokeLater( () -> {
+				this.running.remove( searcher);
+				this.cancelButton.setEnabled( !this.running.isEmpty());
+				if ( error == null) {
+					return;
+				}
+				final Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+				if ( cause instanceof Searcher.SearchCancelledException) {
+					this.outputLabel.setText( "Search cancelled after " + searcher.numberOfPositionsTriedSoFar() + " positions\n");
+				} else {
+					this.outputLabel.setText( "Search failed: " + cause + "\n");
+				}
+			});
+		});
 	}
 
 	/**
-	 * Implements {@link SearchListener#possibleMatch(int, long, long) by displaying the information
-	 * in the UI output label.
+	 * Displays the output of one search. It keeps the images that search was started with, so
+	 * its positions are decoded against them even if other images have been opened since, and
+	 * its matches are only highlighted while its main image is still the one on display.
 	 */
-	@Override
-	public void possibleMatch( final int position, final long elapsedTime, final long positionsTriedSoFar) {
-		int x = position % mainImage.getWidth();
-		int y = position / mainImage.getWidth();
-		this.outputLabel.setText( "Possible match at: [" + x + "," + y  + "] at " + (elapsedTime / 1000.0) + "s (" + positionsTriedSoFar + " positions attempted)\n");
-		int w = smallImage.getWidth();
-		int h = smallImage.getHeight();
-		Rectangle r = new Rectangle( x, y, w, h);
-		mainImagePanel.addHighlight(r);
-	}
-
-	@Override
-	public void update( final int position, final long elapsedTime, final long positionsTriedSoFar) {
-		int x = position % mainImage.getWidth();
-		int y = position / mainImage.getWidth();
-		this.outputLabel.setText( "Update at: [" + x + "," + y  + "] at " + (elapsedTime / 1000.0) + "s (" + positionsTriedSoFar + " positions attempted)\n");
-
-	}
+	private final class SearchView implements SearchListener {
 
+		private final BufferedImage mainImage;
+		private final BufferedImage smallImage;
 
-	private static void launch() {
-		new SearchUI();
-
-	}
-
-	private static class ImagePanel extends JPanel {
-		private static final long serialVersionUID = 1L;
-
-		private BufferedImage image;
-
-		private List<Rectangle> highlights = new ArrayList<Rectangle>();
-
-		public void setImage( BufferedImage image) {
-			this.image = image;
-
-			double scale = 1;
-
-			if ( image.getWidth() >= image.getHeight()) {
-				if ( image.getWidth() > 800) {
-					scale = 800.0 / image.getWidth();
-				}
-			} else {
-				if ( image.getHeight() > 800) {
-					scale = 800.0 / image.getHeight();
-				}
-			}
-			Dimension d = new Dimension( 
-					(int)Math.ceil(image.getWidth() * scale), 
-					(int)Math.ceil(image.getHeight() * scale));
-			//System.out.println( d);
-			setPreferredSize( d);
-
-			invalidate();
-			repaint();
+		SearchView( final BufferedImage mainImage, final BufferedImage smallImage) {
+			this.mainImage = mainImage;
+			this.smallImage = smallImage;
 		}
 
-		public void addHighlight( Rectangle r) {
-			synchronized( highlights) {
-				this.highlights.add( r);
-			}
-			repaint();
+		/**
+		 * Implements {@link SearchListener#information(String)} by displaying the information
+		 * in the UI output label.
+		 */
+		@Override
+		public void information( final String message) {
+			outputLabel.setText( message + "\n");
 		}
 
-		public void resetHighlights() {
-			synchronized( highlights) {
-				this.highlights.clear();
+		/**
+		 * Implements {@link SearchListener#possibleMatch(int, long, long)} by displaying the information
+		 * in the UI output label.
+		 */
+		@Override
+		public void possibleMatch( final int position, final long elapsedTime, final long positionsTriedSoFar) {
+			int x = position % this.mainImage.getWidth();
+			int y = position / this.mainImage.getWidth();
+			outputLabel.setText( "Possible match at: [" + x + "," + y  + "] at " + (elapsedTime / 1000.0) + "s (" + positionsTriedSoFar + " positions attempted)\n");
+			if ( this.mainImage != SearchUI.this.mainImage) {
+				return;
 			}
-			repaint();
+			int w = this.smallImage.getWidth();
+			int h = this.smallImage.getHeight();
+			Rectangle r = new Rectangle( x, y, w, h);
+			mainImagePanel.addHighlight(r);
 		}
 
 		@Override
-		public void paintComponent( Graphics g) {
-			if ( this.image != null) {
-				g = g.create();
-				double scale = getWidth() / (double)this.image.getWidth();
-				//System.out.println( scale + "!");
-				g.drawImage( this.image, 0, 0, getWidth(), (int)(this.image.getHeight() * scale), this);
-				//System.out.println( ">>>" + completed);
-				g.setColor( Color.YELLOW);
-				synchronized( highlights) {
-					for( Rectangle r : highlights) {
-						Rectangle s = new Rectangle( 
-								(int)(r.x * scale), 
-								(int)(r.y * scale), 
-								(int)(r.width * scale), 
-								(int)(r.height * scale));
-						((Graphics2D) g).draw( s);
-						//System.out.println( r + " >> " + s);
-					}
-				}
-			}
+		public void update( final int position, final long elapsedTime, final long positionsTriedSoFar) {
+			int x = position % this.mainImage.getWidth();
+			int y = position / this.mainImage.getWidth();
+			outputLabel.setText( "Update at: [" + x + "," + y  + "] at " + (elapsedTime / 1000.0) + "s (" + positionsTriedSoFar + " positions attempted)\n");
 		}
+	}
+
+
+	private static void launch() {
+		new SearchUI();
 
 	}
 
@@ -0,0 +1,55 @@
+package adp.image.report3;
+
+import adp.image.jar.Searcher;
+import adp.image.report4.Fixtures;
+import adp.image.report4.MatchCollector;
+import adp.image.report4.RasterSearcher;
+import adp.image.report4.SearchMetrics;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdvancedSearcherTest {
+
+    @ParameterizedTest
+    @ValueSource( strings = { "tiny3r.jpg", "small1r.jpg", "small2r.jpg"})
+    void findsTheRasterSearcherMatches( final String template) {
+        final BufferedImage main = Fixtures.mainImage();
+        final BufferedImage sub = Fixtures.image( template);
+        final AdvancedSearcher searcher = new AdvancedSearcher( main, sub, 0, main.getWidth() * main.getHeight(), null);
+
+        assertEquals( MatchCollector.run( new RasterSearcher( main, sub)), MatchCollector.run( searcher));
+        assertEquals( searcher.numberOfPositionsToTry(), searcher.numberOfPositionsTriedSoFar());
+    }
+
+    @Test
+    void keepsACancelFromBeforeTheSearchStarted() {
+        final BufferedImage main = Fixtures.mainImage();
+        final AdvancedSearcher searcher = new AdvancedSearcher( main, Fixtures.image( "small1r.jpg"), 0, main.getWidth() * main.getHeight(), null);
+        searcher.cancel();
+        assertThrows( Searcher.SearchCancelledException.class, () -> MatchCollector.run( searcher));
+        assertEquals( 0, searcher.numberOfPositionsTriedSoFar());
+
+        searcher.reset();
+        assertEquals( Fixtures.basicMatches( "small1r.jpg"), MatchCollector.run( searcher));
+    }
+
+    @Test
+    void reportsTheWindowsItAbandonsEarly() {
+        final BufferedImage main = Fixtures.mainImage();
+        final AdvancedSearcher searcher = new AdvancedSearcher( main, Fixtures.image( "small1r.jpg"), 0, main.getWidth() * main.getHeight(), null);
+        final SearchMetrics metrics = SearchMetrics.of( AdvancedSearcher.class);
+        metrics.reset();
+        MatchCollector.run( searcher);
+
+        assertTrue( metrics.getAbandonRate() > 0);
+        assertTrue( metrics.getAbandonRate() <= 1);
+    }
+}
@@ -0,0 +1,60 @@
+package adp.image.report4;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BatchSearcherTest {
+
+    private static final String[] TEMPLATES = { "tiny3r.jpg", "small1r.jpg", "small2r.jpg"};
+
+    @Test
+    void findsTheRasterSearcherMatchesOfEveryTemplate() {
+        final BufferedImage main = Fixtures.mainImage();
+        final List<BufferedImage> templates = new ArrayList<BufferedImage>();
+        final List<List<Integer>> matches = new ArrayList<List<Integer>>();
+        for( String template : TEMPLATES) {
+            templates.add( Fixtures.image( template));
+            matches.add( new ArrayList<Integer>());
+        }
+
+        new BatchSearcher( main, templates).runSearch( new BatchSearcher.BatchSearchListener() {
+            @Override
+            public void possibleMatch( final int template, final int position, final long elapsedTime, final long positionsTriedSoFar) {
+                matches.get( template).add( position);
+            }
+
+            @Override
+            public void possibleMatch( final int position, final long elapsedTime, final long positionsTriedSoFar) {
+                throw new AssertionError( "Not called by a BatchSearcher");
+            }
+
+            @Override
+            public void information( final String message) {
+            }
+
+            @Override
+            public void update( final int position, final long elapsedTime, final long positionsTriedSoFar) {
+            }
+        });
+
+        for( int i = 0; i < TEMPLATES.length; i++) {
+            Collections.sort( matches.get( i));
+            assertEquals( MatchCollector.run( new RasterSearcher( main, templates.get( i))), matches.get( i), TEMPLATES[i]);
+        }
+    }
+
+    @Test
+    void reportsTheSameMatchesForASingleTemplate() {
+        final BufferedImage main = Fixtures.mainImage();
+        final BufferedImage sub = Fixtures.image( "tiny3r.jpg");
+        assertEquals( MatchCollector.run( new RasterSearcher( main, sub)),
+                MatchCollector.run( new BatchSearcher( main, Arrays.asList( sub))));
+    }
+}
@@ -0,0 +1,37 @@
+package adp.image.report4;
+
+import adp.image.jar.Searcher.SearchCancelledException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CorrelationFilterTest {
+
+    @ParameterizedTest
+    @ValueSource( strings = { "tiny3r.jpg", "small1r.jpg", "small2r.jpg"})
+    void losesNoMatches( final String template) {
+        final BufferedImage main = Fixtures.mainImage();
+        final BufferedImage sub = Fixtures.image( template);
+        final RasterMatcher matcher = new RasterMatcher( PackedImage.of( main), PackedImage.of( sub));
+        final CorrelationFilter filter = CorrelationFilter.of( matcher.getMainImage(), matcher.getSubImage(), matcher.getThreshold());
+        matcher.addFilter( filter);
+
+        assertEquals( MatchCollector.run( new RasterSearcher( main, sub)), MatchCollector.run( new RasterSearcher( matcher)));
+        //The bound is only worth computing if it rejects most windows
+        assertTrue( filter.numberOfCandidates() < matcher.numberOfPositions() / 4, filter.numberOfCandidates() + " candidates");
+    }
+
+    @Test
+    void stopsWhenCancelled() {
+        final PackedImage main = PackedImage.of( Fixtures.mainImage());
+        final PackedImage sub = PackedImage.of( Fixtures.image( "small1r.jpg"));
+        assertThrows( SearchCancelledException.class, () -> CorrelationFilter.of( main, sub, RasterMatcher.DEFAULT_THRESHOLD, () -> true));
+    }
+}
@@ -0,0 +1,46 @@
+package adp.image.report4;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class DistanceKernelsTest {
+
+    @Test
+    void matchersUseTheScalarKernelByDefault() {
+        final RasterMatcher matcher = new RasterMatcher( PackedImage.of( Fixtures.image( "small1r.jpg")), PackedImage.of( Fixtures.image( "tiny3r.jpg")));
+        assertSame( DistanceKernels.scalar(), matcher.getKernel());
+    }
+
+    @ParameterizedTest
+    @ValueSource( strings = { "tiny3r.jpg", "small1r.jpg", "small2r.jpg"})
+    void theVectorKernelFindsTheScalarMatches( final String template) {
+        assumeTrue( DistanceKernels.vector() != null, "The vector kernel is only built on Java 16 and later");
+        final BufferedImage main = Fixtures.mainImage();
+        final BufferedImage sub = Fixtures.image( template);
+        final RasterMatcher matcher = new RasterMatcher( PackedImage.of( main), PackedImage.of( sub));
+        matcher.setKernel( DistanceKernels.vector());
+
+        assertEquals( MatchCollector.run( new RasterSearcher( main, sub)), MatchCollector.run( new RasterSearcher( matcher)));
+    }
+
+    @Test
+    void theVectorKernelScoresWithinRoundingOfTheScalarOne() {
+        assumeTrue( DistanceKernels.vector() != null, "The vector kernel is only built on Java 16 and later");
+        final RasterMatcher scalar = new RasterMatcher( PackedImage.of( Fixtures.mainImage()), PackedImage.of( Fixtures.image( "small1r.jpg")));
+        final RasterMatcher vector = new RasterMatcher( scalar.getMainImage(), scalar.getSubImage());
+        vector.setKernel( DistanceKernels.vector());
+        for( int y = 0; y <= scalar.getPlacements().lastY(); y += 7) {
+            for( int x = 0; x <= scalar.getPlacements().lastX(); x += 7) {
+                final double expected = scalar.score( x, y);
+                assertEquals( expected, vector.score( x, y), expected * 1e-12);
+            }
+        }
+    }
+}
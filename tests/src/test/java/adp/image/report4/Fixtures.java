@@ -0,0 +1,60 @@
+package adp.image.report4;
+
+import adp.image.jar.BasicSearcher;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.imageio.ImageIO;
+
+/**
+ * The bundled images the tests search with, looked up in the directory given by the
+ * {@code adp.fixtures} system property, or the parent of the working directory. Every template
+ * is searched for in bigImage1r.jpg. Images and the matches of {@link BasicSearcher} are loaded
+ * once per JVM.
+ */
+public final class Fixtures {
+
+    public static final String MAIN_IMAGE = "bigImage1r.jpg";
+
+    private static final Map<String, BufferedImage> IMAGES = new HashMap<String, BufferedImage>();
+    private static final Map<String, List<Integer>> BASIC_MATCHES = new HashMap<String, List<Integer>>();
+
+    private Fixtures() {
+    }
+
+    public static File file( final String name) {
+        return new File( System.getProperty( "adp.fixtures", ".."), name);
+    }
+
+    public static synchronized BufferedImage image( final String name) {
+        BufferedImage image = IMAGES.get( name);
+        if ( image == null) {
+            try {
+                image = ImageIO.read( file( name));
+            } catch ( IOException e) {
+                throw new UncheckedIOException( e);
+            }
+            IMAGES.put( name, image);
+        }
+        return image;
+    }
+
+    public static BufferedImage mainImage() {
+        return image( MAIN_IMAGE);
+    }
+
+    /** Returns the matches of the original {@link BasicSearcher}, which tries every position but the last. */
+    public static synchronized List<Integer> basicMatches( final String template) {
+        List<Integer> matches = BASIC_MATCHES.get( template);
+        if ( matches == null) {
+            matches = MatchCollector.run( new BasicSearcher( mainImage(), image( template)));
+            BASIC_MATCHES.put( template, matches);
+        }
+        return matches;
+    }
+}
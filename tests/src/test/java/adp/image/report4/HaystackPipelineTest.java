@@ -0,0 +1,142 @@
+package adp.image.report4;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class HaystackPipelineTest {
+
+    private static final String[] HAYSTACKS = { "bigImage1r.jpg", "small1r.jpg", "small2r.jpg"};
+
+    @TempDir
+    File directory;
+
+    @Test
+    void searchesEveryImageAndReportsTheOthersAsFailed() throws Exception {
+        final List<File> files = haystacks();
+        final File notAnImage = new File( this.directory, "notes.txt");
+        Files.write( notAnImage.toPath(), "not an image".getBytes( StandardCharsets.US_ASCII));
+        files.add( notAnImage);
+
+        final Results results = new Results();
+        final HaystackPipeline pipeline = new HaystackPipeline( Fixtures.image( "tiny3r.jpg"));
+        pipeline.run( files, results);
+
+        assertExpectedMatches( results);
+        assertEquals( Arrays.asList( notAnImage), new ArrayList<File>( results.failed.keySet()));
+        assertEquals( HAYSTACKS.length, pipeline.numberOfImagesSearched());
+    }
+
+    @Test
+    void readsTheImagesFromTheCacheOnTheSecondRun() throws Exception {
+        final File cacheDirectory = new File( this.directory, "cache");
+        final RasterCache cache = new RasterCache( cacheDirectory);
+        final HaystackPipeline pipeline = new HaystackPipeline( PackedImage.of( Fixtures.image( "tiny3r.jpg")), 2, 2, 1);
+        pipeline.setCache( cache);
+
+        pipeline.run( haystacks(), new Results());
+        assertEquals( 0, cache.numberOfHits());
+        assertEquals( HAYSTACKS.length, cache.numberOfMisses());
+
+        final Results results = new Results();
+        pipeline.run( haystacks(), results);
+        assertExpectedMatches( results);
+        assertEquals( HAYSTACKS.length, cache.numberOfHits());
+    }
+
+    @Test
+    void reportsOneMatchPerClusterWhenSuppressing() throws Exception {
+        final HaystackPipeline pipeline = new HaystackPipeline( Fixtures.image( "tiny3r.jpg"));
+        pipeline.setSuppressNeighbours( true);
+        final Results results = new Results();
+        pipeline.run( haystacks(), results);
+
+        assertEquals( HAYSTACKS.length, results.searched.size());
+        for( File file : results.searched.keySet()) {
+            final RasterMatcher matcher = new RasterMatcher( PackedImage.of( Fixtures.image( file.getName())), PackedImage.of( Fixtures.image( "tiny3r.jpg")));
+            final MatchCollector expected = new MatchCollector();
+            new MatchSuppressor( expected, matcher).runSearch( new RasterSearcher( matcher));
+            final List<Integer> matches = new ArrayList<Integer>();
+            for( int position : results.searched.get( file)) {
+                matches.add( position);
+            }
+            assertEquals( expected.positions(), matches, file.getName());
+        }
+    }
+
+    @Test
+    void stopsInsteadOfHangingWhenEverySearcherDies() throws Exception {
+        final List<File> files = new ArrayList<File>();
+        for( int i = 0; i < 10; i++) {
+            files.addAll( haystacks());
+        }
+        final HaystackPipeline pipeline = new HaystackPipeline( PackedImage.of( Fixtures.image( "tiny3r.jpg")), 1, 1, 1);
+        final Results throwing = new Results() {
+            @Override
+            public void searched( final File file, final int[] matches, final long searchTime) {
+                throw new IllegalStateException( "listener failed");
+            }
+        };
+        final IllegalStateException e = assertTimeoutPreemptively( Duration.ofSeconds( 60),
+                () -> assertThrows( IllegalStateException.class, () -> pipeline.run( files, throwing)));
+        assertEquals( "listener failed", e.getCause().getMessage());
+    }
+
+    private List<File> haystacks() throws IOException {
+        final List<File> files = new ArrayList<File>();
+        for( String name : HAYSTACKS) {
+            final File copy = new File( this.directory, name);
+            if ( !copy.exists()) {
+                Files.copy( Fixtures.file( name).toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            files.add( copy);
+        }
+        return files;
+    }
+
+    private static void assertExpectedMatches( final Results results) {
+        assertEquals( HAYSTACKS.length, results.searched.size());
+        for( String name : HAYSTACKS) {
+            final List<Integer> expected = MatchCollector.run( new RasterSearcher( Fixtures.image( name), Fixtures.image( "tiny3r.jpg")));
+            final List<Integer> matches = new ArrayList<Integer>();
+            for( File file : results.searched.keySet()) {
+                if ( file.getName().equals( name)) {
+                    for( int position : results.searched.get( file)) {
+                        matches.add( position);
+                    }
+                }
+            }
+            assertEquals( expected, matches, name);
+        }
+    }
+
+    private static class Results implements HaystackPipeline.Listener {
+        final Map<File, int[]> searched = new ConcurrentHashMap<File, int[]>();
+        final Map<File, IOException> failed = new ConcurrentHashMap<File, IOException>();
+
+        @Override
+        public void searched( final File file, final int[] matches, final long searchTime) {
+            this.searched.put( file, matches);
+        }
+
+        @Override
+        public void failed( final File file, final IOException e) {
+            this.failed.put( file, e);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package adp.image.report4;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ImageCacheTest {
+
+    @Test
+    void keepsNoPackedCopyOfImagesOnlyRead() throws Exception {
+        final ImageCache cache = new ImageCache( ImageCache.DEFAULT_MAX_BYTES);
+        final File file = Fixtures.file( "small1r.jpg");
+
+        final BufferedImage image = cache.read( file);
+        assertSame( image, cache.read( file));
+        final long imageBytes = cache.sizeInBytes();
+        assertEquals( 1, cache.numberOfMisses());
+
+        final PackedImage packed = cache.readPacked( file);
+        assertArrayEquals( PackedImage.of( image).pixels(), packed.pixels());
+        assertSame( packed, cache.readPacked( file));
+        assertEquals( imageBytes + 4L * 30 * 30, cache.sizeInBytes());
+        assertEquals( 1, cache.numberOfMisses());
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedImages() throws Exception {
+        final ImageCache cache = new ImageCache( ImageCache.DEFAULT_MAX_BYTES);
+        cache.read( Fixtures.file( "small1r.jpg"));
+        final long oneImage = cache.sizeInBytes();
+
+        //Room for both images, or one of them with its packed copy
+        final ImageCache bounded = new ImageCache( 2 * oneImage + 4L * 30 * 30 - 1);
+        bounded.read( Fixtures.file( "small1r.jpg"));
+        bounded.read( Fixtures.file( "small2r.jpg"));
+        bounded.read( Fixtures.file( "small1r.jpg"));
+        //Unpacking small1r.jpg makes room by evicting small2r.jpg
+        bounded.readPacked( Fixtures.file( "small1r.jpg"));
+        assertEquals( 1, bounded.numberOfEntries());
+        assertEquals( 1, bounded.numberOfEvictions());
+        bounded.read( Fixtures.file( "small1r.jpg"));
+        assertEquals( 2, bounded.numberOfMisses());
+    }
+}
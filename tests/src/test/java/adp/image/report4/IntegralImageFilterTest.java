@@ -0,0 +1,37 @@
+package adp.image.report4;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IntegralImageFilterTest {
+
+    @ParameterizedTest
+    @ValueSource( strings = { "tiny3r.jpg", "small1r.jpg", "small2r.jpg"})
+    void prunesWindowsWithoutLosingMatches( final String template) {
+        final RasterMatcher matcher = matcher( template);
+        final IntegralImageFilter filter = IntegralImageFilter.of( matcher.getMainImage(), matcher.getSubImage(), matcher.getThreshold());
+        matcher.addFilter( filter);
+
+        assertEquals( MatchCollector.run( new RasterSearcher( matcher( template))), MatchCollector.run( new RasterSearcher( matcher)));
+        assertTrue( matcher.numberOfPruned( filter) > 0);
+    }
+
+    @ParameterizedTest
+    @ValueSource( strings = { "tiny3r.jpg", "small1r.jpg", "small2r.jpg"})
+    void losesNoMatchInWindowsTruncatedByTheEdges( final String template) {
+        final RasterMatcher plain = matcher( template);
+        plain.setMinimumOverlap( 1, 1);
+        final RasterMatcher matcher = matcher( template);
+        matcher.setMinimumOverlap( 1, 1);
+        matcher.addFilter( IntegralImageFilter.of( matcher.getMainImage(), matcher.getSubImage(), matcher.getThreshold()));
+
+        assertEquals( MatchCollector.run( new RasterSearcher( plain)), MatchCollector.run( new RasterSearcher( matcher)));
+    }
+
+    private static RasterMatcher matcher( final String template) {
+        return new RasterMatcher( PackedImage.of( Fixtures.mainImage()), PackedImage.of( Fixtures.image( template)));
+    }
+}
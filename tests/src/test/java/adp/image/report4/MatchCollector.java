@@ -0,0 +1,39 @@
+package adp.image.report4;
+
+import adp.image.jar.Searcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** Collects the positions a Searcher reports, from any thread. */
+public final class MatchCollector implements Searcher.SearchListener {
+
+    private final List<Integer> positions = new ArrayList<Integer>();
+
+    /** Runs the search and returns the reported positions in ascending order. */
+    public static List<Integer> run( final Searcher searcher) {
+        final MatchCollector collector = new MatchCollector();
+        searcher.runSearch( collector);
+        return collector.positions();
+    }
+
+    @Override
+    public void information( final String message) {
+    }
+
+    @Override
+    public synchronized void possibleMatch( final int position, final long elapsedTime, final long positionsTriedSoFar) {
+        this.positions.add( position);
+    }
+
+    @Override
+    public void update( final int position, final long elapsedTime, final long positionsTriedSoFar) {
+    }
+
+    public synchronized List<Integer> positions() {
+        final List<Integer> sorted = new ArrayList<Integer>( this.positions);
+        Collections.sort( sorted);
+        return sorted;
+    }
+}
@@ -0,0 +1,91 @@
+package adp.image.report4;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MatchSuppressorTest {
+
+    @ParameterizedTest
+    @ValueSource( strings = { "tiny3r.jpg", "small1r.jpg", "small2r.jpg"})
+    void keepsTheBestMatchOfEveryCluster( final String template) {
+        final RasterMatcher matcher = new RasterMatcher( PackedImage.of( Fixtures.mainImage()), PackedImage.of( Fixtures.image( template)));
+        final List<Integer> all = MatchCollector.run( new RasterSearcher( matcher));
+        final Scores kept = new Scores();
+        final MatchSuppressor suppressor = new MatchSuppressor( kept, matcher);
+        suppressor.runSearch( new RasterSearcher( matcher));
+
+        final int width = matcher.getMainImage().getWidth();
+        final int radiusX = matcher.getSubImage().getWidth();
+        final int radiusY = matcher.getSubImage().getHeight();
+        assertEquals( 0, suppressor.numberOfCandidates());
+        assertEquals( all.isEmpty(), kept.positions.isEmpty());
+        for( int i = 0; i < kept.positions.size(); i++) {
+            final int position = kept.positions.get( i);
+            assertTrue( all.contains( position));
+            //The searcher's own score, not a rescored one
+            assertEquals( matcher.score( position % width, position / width), kept.scores.get( i));
+        }
+        //Every match is next to a kept one at least as good, and no two kept ones are neighbours
+        for( int position : all) {
+            boolean covered = false;
+            for( int i = 0; i < kept.positions.size(); i++) {
+                final int other = kept.positions.get( i);
+                if ( neighbours( position, other, width, radiusX, radiusY)) {
+                    covered |= kept.scores.get( i) <= matcher.score( position % width, position / width);
+                    assertFalse( other != position && kept.positions.contains( position), position + " and " + other + " are both kept");
+                }
+            }
+            assertTrue( covered, "match " + position + " is not covered");
+        }
+    }
+
+    private static boolean neighbours( final int a, final int b, final int width, final int radiusX, final int radiusY) {
+        return Math.abs( a % width - b % width) < radiusX && Math.abs( a / width - b / width) < radiusY;
+    }
+
+    @Test
+    void holdsMatchesBackUntilFlushed() {
+        final RasterMatcher matcher = new RasterMatcher( PackedImage.of( Fixtures.mainImage()), PackedImage.of( Fixtures.image( "small1r.jpg")));
+        final Scores kept = new Scores();
+        final MatchSuppressor suppressor = new MatchSuppressor( kept, matcher);
+        new RasterSearcher( matcher).runSearch( suppressor);
+        assertTrue( kept.positions.isEmpty());
+        assertEquals( Fixtures.basicMatches( "small1r.jpg").size(), suppressor.numberOfCandidates());
+
+        suppressor.flush();
+        assertEquals( Fixtures.basicMatches( "small1r.jpg"), kept.positions);
+    }
+
+    //Collects the kept positions with their scores, in the order they are passed on
+    private static final class Scores implements ScoredSearchListener {
+        final List<Integer> positions = new ArrayList<Integer>();
+        final List<Double> scores = new ArrayList<Double>();
+
+        @Override
+        public void information( final String message) {
+        }
+
+        @Override
+        public void possibleMatch( final int position, final long elapsedTime, final long positionsTriedSoFar) {
+            throw new AssertionError( "matches are passed on with their scores");
+        }
+
+        @Override
+        public synchronized void possibleMatch( final int position, final double score, final long elapsedTime, final long positionsTriedSoFar) {
+            this.positions.add( position);
+            this.scores.add( score);
+        }
+
+        @Override
+        public void update( final int position, final long elapsedTime, final long positionsTriedSoFar) {
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package adp.image.report4;
+
+import adp.image.jar.Searcher;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProgressDispatcherTest {
+
+    @Test
+    void passesOnWholeUpdatesOneAtATimeAndInOrder() throws Exception {
+        final Updates updates = new Updates();
+        final ProgressDispatcher dispatcher = new ProgressDispatcher( updates, 1);
+        final AtomicInteger tried = new AtomicInteger();
+        final List<Thread> workers = new ArrayList<Thread>();
+        for( int i = 0; i < 8; i++) {
+            workers.add( new Thread( () -> {
+                for( int k = 0; k < 20000; k++) {
+                    //Each update's position and elapsed time are derived from its count
+                    final int count = tried.incrementAndGet();
+                    dispatcher.update( count, 2L * count, count);
+                }
+            }));
+        }
+        for( Thread worker : workers) {
+            worker.start();
+        }
+        for( Thread worker : workers) {
+            worker.join();
+        }
+        dispatcher.information( "Finished");
+
+        assertEquals( "", updates.errors.toString());
+        assertEquals( tried.get(), updates.last);
+        assertTrue( updates.finished);
+    }
+
+    private static final class Updates implements Searcher.SearchListener {
+        final StringBuilder errors = new StringBuilder();
+        final AtomicInteger inside = new AtomicInteger();
+        volatile long last = -1;
+        volatile boolean finished = false;
+
+        @Override
+        public void information( final String message) {
+            this.finished = true;
+        }
+
+        @Override
+        public void possibleMatch( final int position, final long elapsedTime, final long positionsTriedSoFar) {
+        }
+
+        @Override
+        public void update( final int position, final long elapsedTime, final long positionsTriedSoFar) {
+            if ( this.inside.incrementAndGet() != 1) {
+                record( "overlapping updates");
+            }
+            if ( position != positionsTriedSoFar || elapsedTime != 2 * positionsTriedSoFar) {
+                record( "mixed update " + position + "/" + elapsedTime + "/" + positionsTriedSoFar);
+            }
+            if ( positionsTriedSoFar <= this.last) {
+                record( "update " + positionsTriedSoFar + " after " + this.last);
+            }
+            this.last = positionsTriedSoFar;
+            Thread.yield();
+            this.inside.decrementAndGet();
+        }
+
+        private synchronized void record( final String error) {
+            this.errors.append( error).append( '\n');
+        }
+    }
+}
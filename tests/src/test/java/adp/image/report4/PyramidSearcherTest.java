@@ -0,0 +1,26 @@
+package adp.image.report4;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PyramidSearcherTest {
+
+    @ParameterizedTest
+    @ValueSource( strings = { "tiny3r.jpg", "small1r.jpg", "small2r.jpg"})
+    void findsTheRasterSearcherMatches( final String template) {
+        final BufferedImage main = Fixtures.mainImage();
+        final BufferedImage sub = Fixtures.image( template);
+        final List<Integer> expected = MatchCollector.run( new RasterSearcher( main, sub));
+
+        final List<Integer> matches = MatchCollector.run( new PyramidSearcher( main, sub));
+        //Only a subset is promised, but on the bundled images nothing is lost
+        assertTrue( expected.containsAll( matches));
+        assertEquals( expected, matches);
+    }
+}
@@ -0,0 +1,86 @@
+package adp.image.report4;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RasterCacheTest {
+
+    //The header and 30x30 pixels of small1r.jpg and small2r.jpg
+    private static final long SMALL_ENTRY = 16 + 4 * 30 * 30;
+
+    @TempDir
+    File directory;
+
+    @Test
+    void readsTheDecodedPixelsBackFromTheEntry() throws Exception {
+        final RasterCache cache = new RasterCache( new File( this.directory, "cache"));
+        final File file = copy( "small1r.jpg", "a.jpg");
+        final PackedImage expected = PackedImage.of( Fixtures.image( "small1r.jpg"));
+
+        assertArrayEquals( expected.pixels(), cache.load( file).pixels());
+        final PackedImage cached = cache.load( file);
+        assertEquals( expected.getWidth(), cached.getWidth());
+        assertArrayEquals( expected.pixels(), cached.pixels());
+        assertEquals( 1, cache.numberOfMisses());
+        assertEquals( 1, cache.numberOfHits());
+    }
+
+    @Test
+    void decodesAModifiedFileAgain() throws Exception {
+        final RasterCache cache = new RasterCache( new File( this.directory, "cache"));
+        final File file = copy( "small1r.jpg", "a.jpg");
+        cache.load( file);
+        Files.setLastModifiedTime( file.toPath(), FileTime.fromMillis( file.lastModified() - 60000));
+        cache.load( file);
+        assertEquals( 2, cache.numberOfMisses());
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedEntries() throws Exception {
+        final RasterCache cache = new RasterCache( new File( this.directory, "cache"), 2 * SMALL_ENTRY);
+        final File first = copy( "small1r.jpg", "first.jpg");
+        final File second = copy( "small2r.jpg", "second.jpg");
+        final File third = copy( "small1r.jpg", "third.jpg");
+        cache.load( first);
+        Thread.sleep( 20);
+        cache.load( second);
+        Thread.sleep( 20);
+        //Makes second the least recently used
+        cache.load( first);
+        Thread.sleep( 20);
+        cache.load( third);
+        assertTrue( cache.size() <= cache.getMaxBytes());
+
+        final long misses = cache.numberOfMisses();
+        cache.load( first);
+        cache.load( third);
+        assertEquals( misses, cache.numberOfMisses());
+        cache.load( second);
+        assertEquals( misses + 1, cache.numberOfMisses());
+    }
+
+    @Test
+    void doesNotStoreImagesLargerThanTheCache() throws Exception {
+        final RasterCache cache = new RasterCache( new File( this.directory, "cache"), SMALL_ENTRY - 1);
+        final File file = copy( "small1r.jpg", "a.jpg");
+        cache.load( file);
+        cache.load( file);
+        assertEquals( 0, cache.size());
+        assertEquals( 2, cache.numberOfMisses());
+    }
+
+    private File copy( final String fixture, final String name) throws IOException {
+        final File copy = new File( this.directory, name);
+        Files.copy( Fixtures.file( fixture).toPath(), copy.toPath());
+        return copy;
+    }
+}
@@ -0,0 +1,113 @@
+package adp.image.report4;
+
+import adp.image.jar.Searcher;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RasterSearcherTest {
+
+    @ParameterizedTest
+    @ValueSource( strings = { "tiny3r.jpg", "small1r.jpg", "small2r.jpg"})
+    void findsTheBasicSearcherMatchesWithAnOverlapOf1x1( final String template) {
+        final BufferedImage main = Fixtures.mainImage();
+        final RasterSearcher searcher = new RasterSearcher( main, Fixtures.image( template));
+        searcher.getMatcher().setMinimumOverlap( 1, 1);
+
+        final List<Integer> matches = MatchCollector.run( searcher);
+        //BasicSearcher never tries the last position
+        matches.remove( Integer.valueOf( main.getWidth() * main.getHeight() - 1));
+        assertEquals( Fixtures.basicMatches( template), matches);
+        assertEquals( main.getWidth() * main.getHeight(), searcher.numberOfPositionsTriedSoFar());
+    }
+
+    @ParameterizedTest
+    @ValueSource( strings = { "tiny3r.jpg", "small1r.jpg", "small2r.jpg"})
+    void findsTheBasicSearcherMatchesWhereTheTemplateFits( final String template) {
+        final BufferedImage main = Fixtures.mainImage();
+        final BufferedImage sub = Fixtures.image( template);
+        final RasterSearcher searcher = new RasterSearcher( main, sub);
+
+        final List<Integer> expected = new ArrayList<Integer>();
+        for( int position : Fixtures.basicMatches( template)) {
+            if ( position % main.getWidth() <= main.getWidth() - sub.getWidth()
+                    && position / main.getWidth() <= main.getHeight() - sub.getHeight()) {
+                expected.add( position);
+            }
+        }
+        assertEquals( expected, MatchCollector.run( searcher));
+        final int valid = (main.getWidth() - sub.getWidth() + 1) * (main.getHeight() - sub.getHeight() + 1);
+        assertEquals( valid, searcher.numberOfPositionsToTry());
+        assertEquals( valid, searcher.numberOfPositionsTriedSoFar());
+    }
+
+    @ParameterizedTest
+    @ValueSource( strings = { "tiny3r.jpg", "small1r.jpg"})
+    void findsOnlyTheMatchesInItsRange( final String template) {
+        final BufferedImage main = Fixtures.mainImage();
+        final RasterMatcher matcher = new RasterMatcher( PackedImage.of( main), PackedImage.of( Fixtures.image( template)));
+        final int first = 12345;
+        final int end = 200000;
+
+        final List<Integer> expected = new ArrayList<Integer>();
+        for( int position : MatchCollector.run( new RasterSearcher( matcher))) {
+            if ( position >= first && position < end) {
+                expected.add( position);
+            }
+        }
+        final RasterSearcher searcher = new RasterSearcher( matcher, first, end);
+        assertEquals( expected, MatchCollector.run( searcher));
+        assertEquals( searcher.numberOfPositionsToTry(), searcher.numberOfPositionsTriedSoFar());
+    }
+
+    @ParameterizedTest
+    @ValueSource( booleans = { false, true})
+    void countsTheWindowsItAbandonsEarly( final boolean grayscale) {
+        final RasterSearcher searcher = new RasterSearcher( Fixtures.mainImage(), Fixtures.image( "small1r.jpg"));
+        searcher.getMatcher().setGrayscale( grayscale);
+        final int matches = MatchCollector.run( searcher).size();
+
+        final long abandoned = searcher.getMatcher().numberOfAbandoned();
+        assertTrue( abandoned > 0);
+        assertTrue( abandoned <= searcher.numberOfPositionsTriedSoFar() - matches);
+
+        searcher.getMatcher().setEarlyAbandon( false);
+        MatchCollector.run( searcher);
+        assertEquals( 0, searcher.getMatcher().numberOfAbandoned());
+    }
+
+    @Test
+    void keepsACancelFromBeforeTheSearchStarted() {
+        final RasterSearcher searcher = new RasterSearcher( Fixtures.mainImage(), Fixtures.image( "small1r.jpg"));
+        searcher.cancel();
+        assertThrows( Searcher.SearchCancelledException.class, () -> MatchCollector.run( searcher));
+        assertEquals( 0, searcher.numberOfPositionsTriedSoFar());
+
+        searcher.reset();
+        assertEquals( Fixtures.basicMatches( "small1r.jpg"), MatchCollector.run( searcher));
+    }
+
+    @ParameterizedTest
+    @ValueSource( strings = { "tiny3r.jpg", "small1r.jpg", "small2r.jpg"})
+    void findsTheSameGrayscaleMatchesWithFiltersInstalled( final String template) {
+        final RasterMatcher plain = new RasterMatcher( PackedImage.of( Fixtures.mainImage()), PackedImage.of( Fixtures.image( template)));
+        plain.setGrayscale( true);
+        final RasterMatcher filtered = new RasterMatcher( plain.getMainImage(), plain.getSubImage());
+        filtered.addFilter( SampleFilter.of( filtered.getMainImage(), filtered.getSubImage(), filtered.getThreshold(), 1));
+        filtered.addFilter( IntegralImageFilter.of( filtered.getMainImage(), filtered.getSubImage(), filtered.getThreshold()));
+        filtered.addFilter( CorrelationFilter.of( filtered.getMainImage(), filtered.getSubImage(), filtered.getThreshold()));
+        filtered.setGrayscale( true);
+
+        assertEquals( MatchCollector.run( new RasterSearcher( plain)), MatchCollector.run( new RasterSearcher( filtered)));
+        assertEquals( 0, filtered.numberOfPruned());
+    }
+}
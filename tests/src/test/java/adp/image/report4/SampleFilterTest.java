@@ -0,0 +1,41 @@
+package adp.image.report4;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SampleFilterTest {
+
+    @ParameterizedTest
+    @ValueSource( strings = { "tiny3r.jpg", "small1r.jpg", "small2r.jpg"})
+    void losesNoMatchByDefault( final String template) {
+        final RasterMatcher matcher = matcher( template);
+        final SampleFilter filter = SampleFilter.of( matcher.getMainImage(), matcher.getSubImage(), matcher.getThreshold());
+        matcher.addFilter( filter);
+
+        assertFalse( filter.isApproximate());
+        assertEquals( MatchCollector.run( new RasterSearcher( matcher( template))), MatchCollector.run( new RasterSearcher( matcher)));
+    }
+
+    @ParameterizedTest
+    @ValueSource( strings = { "tiny3r.jpg", "small1r.jpg", "small2r.jpg"})
+    void reportsOnlyRealMatchesWithAMargin( final String template) {
+        final RasterMatcher matcher = matcher( template);
+        final SampleFilter filter = SampleFilter.of( matcher.getMainImage(), matcher.getSubImage(), matcher.getThreshold(), 3);
+        matcher.addFilter( filter);
+
+        assertTrue( filter.isApproximate());
+        final List<Integer> exact = MatchCollector.run( new RasterSearcher( matcher( template)));
+        assertTrue( exact.containsAll( MatchCollector.run( new RasterSearcher( matcher))));
+        assertTrue( matcher.numberOfPruned( filter) > 0);
+    }
+
+    private static RasterMatcher matcher( final String template) {
+        return new RasterMatcher( PackedImage.of( Fixtures.mainImage()), PackedImage.of( Fixtures.image( template)));
+    }
+}
@@ -0,0 +1,92 @@
+package adp.image.report4;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TiledSearcherTest {
+
+    @TempDir
+    File directory;
+
+    //small1r.jpg matches once at (951, 53), so 480x60 tiles put the match across both borders
+    @ParameterizedTest
+    @CsvSource( { "tiny3r.jpg, 97, 61", "small1r.jpg, 480, 60", "small1r.jpg, 13, 11", "small2r.jpg, 2048, 2048"})
+    void findsTheRasterSearcherMatchesAcrossTileBorders( final String template, final int tileWidth, final int tileHeight) throws IOException {
+        final TiledSearcher searcher = new TiledSearcher( Fixtures.file( Fixtures.MAIN_IMAGE), PackedImage.of( Fixtures.image( template)), tileWidth, tileHeight);
+        assertEquals( expected( template), search( searcher));
+        assertEquals( searcher.numberOfPositionsToTry(), searcher.numberOfPositionsTriedSoFar());
+    }
+
+    @Test
+    void readsTiledImagesTileByTile() throws IOException {
+        final File tiff = new File( this.directory, "main.tif");
+        final ImageWriter writer = ImageIO.getImageWritersByFormatName( "tiff").next();
+        try( ImageOutputStream out = ImageIO.createImageOutputStream( tiff)) {
+            writer.setOutput( out);
+            final ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setTilingMode( ImageWriteParam.MODE_EXPLICIT);
+            param.setTiling( 64, 64, 0, 0);
+            writer.write( null, new IIOImage( Fixtures.mainImage(), null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        try( ImageInputStream in = ImageIO.createImageInputStream( tiff)) {
+            final ImageReader reader = ImageIO.getImageReaders( in).next();
+            reader.setInput( in);
+            assertTrue( reader.isImageTiled( 0));
+            reader.dispose();
+        }
+
+        final TiledSearcher searcher = new TiledSearcher( tiff, PackedImage.of( Fixtures.image( "small1r.jpg")), 480, 60);
+        assertEquals( expected( "small1r.jpg"), search( searcher));
+    }
+
+    private static List<Long> expected( final String template) {
+        final BufferedImage main = Fixtures.mainImage();
+        final List<Long> expected = new ArrayList<Long>();
+        for( int position : MatchCollector.run( new RasterSearcher( main, Fixtures.image( template)))) {
+            expected.add( (long) position);
+        }
+        return expected;
+    }
+
+    //The matches as y * width + x, in ascending order
+    private static List<Long> search( final TiledSearcher searcher) throws IOException {
+        final List<Long> matches = new ArrayList<Long>();
+        searcher.runSearch( new TiledSearcher.TileListener() {
+            @Override
+            public void information( final String message) {
+            }
+
+            @Override
+            public void possibleMatch( final int x, final int y, final long elapsedTime, final long positionsTriedSoFar) {
+                matches.add( (long) y * searcher.getWidth() + x);
+            }
+
+            @Override
+            public void update( final int x, final int y, final long elapsedTime, final long positionsTriedSoFar) {
+            }
+        });
+        Collections.sort( matches);
+        return matches;
+    }
+}
@@ -0,0 +1,57 @@
+package adp.image.report4;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TopKSearcherTest {
+
+    private static final int K = 10;
+
+    @ParameterizedTest
+    @ValueSource( strings = { "tiny3r.jpg", "small1r.jpg"})
+    void findsTheKBestScoresOfAFullSort( final String template) {
+        final RasterMatcher matcher = new RasterMatcher( PackedImage.of( Fixtures.mainImage()), PackedImage.of( Fixtures.image( template)));
+        final Placements placements = matcher.getPlacements();
+        final int width = matcher.getMainImage().getWidth();
+        final List<double[]> all = new ArrayList<double[]>();
+        for( int y = 0; y <= placements.lastY(); y++) {
+            for( int x = 0; x <= placements.lastX(); x++) {
+                all.add( new double[] { matcher.score( x, y), y * width + x});
+            }
+        }
+        //Equal scores are ranked by position
+        Collections.sort( all, (a, b) -> a[0] != b[0] ? Double.compare( a[0], b[0]) : Double.compare( a[1], b[1]));
+        final int[] positions = new int[K];
+        final double[] scores = new double[K];
+        for( int i = 0; i < K; i++) {
+            scores[i] = all.get( i)[0];
+            positions[i] = (int) all.get( i)[1];
+        }
+
+        final TopKSearcher searcher = new TopKSearcher( matcher, K, TopKSearcher.DEFAULT_ROWS_PER_TASK);
+        MatchCollector.run( searcher);
+        assertArrayEquals( positions, searcher.bestPositions());
+        assertArrayEquals( scores, searcher.bestScores());
+        assertEquals( all.size(), searcher.numberOfPositionsTriedSoFar());
+    }
+
+    @ParameterizedTest
+    @ValueSource( ints = { 1, 3, 50})
+    void doesNotDependOnTheChunkSize( final int rowsPerTask) {
+        final RasterMatcher matcher = new RasterMatcher( PackedImage.of( Fixtures.mainImage()), PackedImage.of( Fixtures.image( "tiny3r.jpg")));
+        final TopKSearcher reference = new TopKSearcher( matcher, K, TopKSearcher.DEFAULT_ROWS_PER_TASK);
+        MatchCollector.run( reference);
+
+        final TopKSearcher searcher = new TopKSearcher( matcher, K, rowsPerTask);
+        MatchCollector.run( searcher);
+        assertArrayEquals( reference.bestPositions(), searcher.bestPositions());
+        assertArrayEquals( reference.bestScores(), searcher.bestScores());
+    }
+}